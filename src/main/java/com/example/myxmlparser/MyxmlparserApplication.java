@@ -1,18 +1,27 @@
 package com.example.myxmlparser;
 
+import com.example.myxmlparser.metrics.IngestionMetrics;
 import com.example.myxmlparser.service.DbUpdateService;
+import com.example.myxmlparser.utility.FeedShape;
+import com.example.myxmlparser.utility.LoadTestUtility;
 import com.example.myxmlparser.utility.TestExerciseUtility;
 import com.example.myxmlparser.service.XmlParserService;
+import com.example.myxmlparser.utility.YmlFeedGenerator;
 import groovy.xml.slurpersupport.GPathResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 
 import java.net.URL;
 import java.nio.file.Path;
 
+@Slf4j
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class MyxmlparserApplication {
 
 	public static void main(String[] args) {
@@ -20,10 +29,27 @@ public class MyxmlparserApplication {
 	}
 
     @Bean
-    ApplicationRunner xmlParserRunner(XmlParserService xmlParserService, DbUpdateService dbUpdateService) {
+    ApplicationRunner xmlParserRunner(XmlParserService xmlParserService, DbUpdateService dbUpdateService, IngestionMetrics metrics) {
         return args -> {
 
+            String generateArg = args.getOptionValues("feed.generate") == null ? null : args.getOptionValues("feed.generate").getFirst();
+            if (generateArg != null && !generateArg.isBlank()) {
+                YmlFeedGenerator.generate(feedShape(args), Path.of(generateArg));
+                return;
+            }
+
             String fileArg = args.getOptionValues("xml.file") == null ? null : args.getOptionValues("xml.file").getFirst();
+
+            if (args.containsOption("loadtest")) {
+                if (fileArg != null && !fileArg.isBlank()) {
+                    LoadTestUtility.run(xmlParserService, dbUpdateService, Path.of(fileArg));
+                } else {
+                    LoadTestUtility.run(xmlParserService, dbUpdateService, feedShape(args));
+                }
+                log.info(metrics.summary());
+                return;
+            }
+
             String urlArg = args.getOptionValues("xml.url") == null ? null : args.getOptionValues("xml.url").getFirst();
 
             GPathResult doc;
@@ -38,7 +64,26 @@ public class MyxmlparserApplication {
             }
 
             TestExerciseUtility.doExercise(xmlParserService, doc, dbUpdateService);
+
+            log.info(metrics.summary());
         };
     }
 
+    /**
+     * Форма синтетического фида из --feed.offers, --feed.categories, --feed.currencies,
+     * --feed.min-params, --feed.max-params, --feed.seed (остальное — значения по умолчанию).
+     */
+    private static FeedShape feedShape(ApplicationArguments args) {
+        FeedShape.FeedShapeBuilder shape = FeedShape.builder();
+
+        if (args.containsOption("feed.offers")) shape.offers(Integer.parseInt(args.getOptionValues("feed.offers").getFirst()));
+        if (args.containsOption("feed.categories")) shape.categories(Integer.parseInt(args.getOptionValues("feed.categories").getFirst()));
+        if (args.containsOption("feed.currencies")) shape.currencies(Integer.parseInt(args.getOptionValues("feed.currencies").getFirst()));
+        if (args.containsOption("feed.min-params")) shape.minParams(Integer.parseInt(args.getOptionValues("feed.min-params").getFirst()));
+        if (args.containsOption("feed.max-params")) shape.maxParams(Integer.parseInt(args.getOptionValues("feed.max-params").getFirst()));
+        if (args.containsOption("feed.seed")) shape.seed(Long.parseLong(args.getOptionValues("feed.seed").getFirst()));
+
+        return shape.build();
+    }
+
 }
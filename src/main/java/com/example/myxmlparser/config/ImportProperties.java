@@ -0,0 +1,180 @@
+package com.example.myxmlparser.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Настройки импорта (префикс {@code myxmlparser}).
+ */
+@Data
+@ConfigurationProperties("myxmlparser")
+public class ImportProperties {
+
+    /**
+     * Сколько UPSERT одной формы отправляется в БД одним batchUpdate.
+     */
+    private int batchSize = 500;
+
+    /**
+     * Сколько потоков пишут в секционированные таблицы параллельно.
+     * Каждая секция PostgreSQL пишется одним потоком; секции раздаются потокам по кругу.
+     */
+    private int writeThreads = 4;
+
+    private final Quarantine quarantine = new Quarantine();
+
+    private final Hierarchy hierarchy = new Hierarchy();
+
+    private final Coordination coordination = new Coordination();
+
+    private final ParallelParse parallelParse = new ParallelParse();
+
+    /**
+     * Декларативное секционирование по имени таблицы из XML,
+     * например myxmlparser.partitioning.offers.strategy=hash.
+     */
+    private final Map<String, Partitioning> partitioning = new LinkedHashMap<>();
+
+    /**
+     * Мягкий режим: плохие строки пишутся в dead-letter таблицу, остальные продолжают загружаться.
+     */
+    @Data
+    public static class Quarantine {
+
+        /**
+         * false — первая плохая строка прерывает импорт (как раньше).
+         */
+        private boolean enabled = false;
+
+        /**
+         * Dead-letter таблица для отклонённых строк.
+         */
+        private String table = "import_errors";
+
+        /**
+         * Допустимая доля отклонённых строк таблицы; при превышении импорт останавливается.
+         */
+        private double maxErrorRate = 0.01;
+
+        /**
+         * Сколько строк таблицы обработать, прежде чем проверять долю ошибок по ходу загрузки.
+         * В конце таблицы доля проверяется всегда.
+         */
+        private int minRows = 1000;
+    }
+
+    /**
+     * Closure-таблица дерева категорий, пересчитываемая при загрузке.
+     */
+    @Data
+    public static class Hierarchy {
+
+        /**
+         * Выключено по умолчанию: при включении загрузка categories создаёт и пишет ещё одну таблицу.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Таблица из XML с деревом.
+         */
+        private String table = "categories";
+
+        /**
+         * Колонка с id родителя (атрибут parentId, имена атрибутов приводятся к нижнему регистру).
+         */
+        private String parentColumn = "parentid";
+
+        private String closureTable = "category_closure";
+    }
+
+    /**
+     * Координация нескольких реплик через advisory-блокировки PostgreSQL.
+     */
+    @Data
+    public static class Coordination {
+
+        private boolean enabled = false;
+
+        /**
+         * На сколько шардов по id делится каждая таблица; реплики занимают шарды независимо.
+         * Таблица с иерархией категорий всегда загружается одним шардом.
+         */
+        private int shards = 1;
+
+        private String leaseTable = "import_leases";
+
+        /**
+         * Пауза между проходами по шардам, которые держат другие реплики.
+         */
+        private Duration retryInterval = Duration.ofSeconds(1);
+
+        /**
+         * Сколько ждать шарды, которые держат другие реплики; по истечении update бросает ImportAbortedException.
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        /**
+         * Имя реплики в таблице аренд; по умолчанию pid@host.
+         */
+        private String owner;
+    }
+
+    /**
+     * Параллельный разбор больших локальных файлов: readFromFile отображает файл в память,
+     * делит таблицу на части по границам строк и разбирает их на ForkJoinPool.
+     */
+    @Data
+    public static class ParallelParse {
+
+        private boolean enabled = false;
+
+        /**
+         * Таблица внутри shop, которая делится на части.
+         */
+        private String table = "offers";
+
+        /**
+         * Элемент строки таблицы, по началу которого проводятся границы частей.
+         */
+        private String rowElement = "offer";
+
+        /**
+         * Примерный размер части в байтах.
+         */
+        private long chunkSize = 64L * 1024 * 1024;
+
+        /**
+         * Потоков разбора; 0 — по числу процессоров.
+         */
+        private int threads = 0;
+    }
+
+    @Data
+    public static class Partitioning {
+
+        /**
+         * HASH — фиксированное число секций по хешу колонки;
+         * LIST — секция на каждое значение колонки (создаётся при загрузке) и секция DEFAULT.
+         */
+        private Strategy strategy = Strategy.HASH;
+
+        /**
+         * Колонка секционирования. Если это не id, первичный ключ становится (id, column).
+         */
+        private String column = "id";
+
+        /**
+         * Число секций для HASH.
+         */
+        private int partitions = 8;
+
+        public enum Strategy {
+            HASH,
+            LIST
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.myxmlparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Отправка пачки UPSERT одной формы в БД.
+ */
+@Name("myxmlparser.BatchFlushed")
+@Label("Batch Flushed")
+@Category({"myxmlparser", "Ingestion"})
+@StackTrace(false)
+@Setter
+public class BatchFlushedEvent extends Event {
+
+    @Label("Table")
+    private String table;
+
+    @Label("Rows")
+    private int rows;
+
+    @Label("Bytes")
+    @Description("Оценка размера параметров пачки")
+    @DataAmount
+    private long bytes;
+
+    @Label("SQL Shape")
+    private String sql;
+
+    /**
+     * Грубая оценка объёма параметров: длина строк и 8 байт на прочие значения.
+     */
+    public static long estimateBytes(List<Object[]> batch) {
+        long bytes = 0;
+        for (Object[] args : batch) {
+            for (Object arg : args) {
+                if (arg instanceof CharSequence cs) {
+                    bytes += cs.length();
+                } else if (arg != null) {
+                    bytes += 8;
+                }
+            }
+        }
+        return bytes;
+    }
+}
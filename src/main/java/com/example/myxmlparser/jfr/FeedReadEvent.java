@@ -0,0 +1,32 @@
+package com.example.myxmlparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Чтение и разбор XML-документа (readFromFile / readFromUrl).
+ */
+@Name("myxmlparser.FeedRead")
+@Label("Feed Read")
+@Category({"myxmlparser", "Ingestion"})
+@StackTrace(false)
+@Setter
+public class FeedReadEvent extends Event {
+
+    @Label("Source")
+    @Description("file или url")
+    private String source;
+
+    @Label("Location")
+    private String location;
+
+    @Label("Bytes Read")
+    @DataAmount
+    private long bytes;
+}
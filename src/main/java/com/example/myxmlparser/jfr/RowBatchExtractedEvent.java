@@ -0,0 +1,25 @@
+package com.example.myxmlparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Извлечение строк таблицы из последнего разобранного XML (getTableRows).
+ */
+@Name("myxmlparser.RowBatchExtracted")
+@Label("Row Batch Extracted")
+@Category({"myxmlparser", "Ingestion"})
+@StackTrace(false)
+@Setter
+public class RowBatchExtractedEvent extends Event {
+
+    @Label("Table")
+    private String table;
+
+    @Label("Rows")
+    private int rows;
+}
@@ -0,0 +1,25 @@
+package com.example.myxmlparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Сверка структуры таблицы в БД с описанием из XML.
+ */
+@Name("myxmlparser.SchemaCheck")
+@Label("Schema Check")
+@Category({"myxmlparser", "Ingestion"})
+@StackTrace(false)
+@Setter
+public class SchemaCheckEvent extends Event {
+
+    @Label("Table")
+    private String table;
+
+    @Label("Matched")
+    private boolean matched;
+}
@@ -0,0 +1,28 @@
+package com.example.myxmlparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * Определение колонок и типов одной таблицы в parseXML.
+ */
+@Name("myxmlparser.TableSchemaInferred")
+@Label("Table Schema Inferred")
+@Category({"myxmlparser", "Ingestion"})
+@StackTrace(false)
+@Setter
+public class TableSchemaInferredEvent extends Event {
+
+    @Label("Table")
+    private String table;
+
+    @Label("Columns")
+    private int columns;
+
+    @Label("Rows Scanned")
+    private int rows;
+}
@@ -0,0 +1,137 @@
+package com.example.myxmlparser.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Метрики стадий импорта: чтение и разбор XML, извлечение строк, приведение типов и запись в БД.
+ * В режиме демона доступны через actuator (/actuator/prometheus), в CLI печатаются сводкой в конце прогона.
+ */
+@Component
+public class IngestionMetrics {
+
+    public static final String PREFIX = "myxmlparser.";
+
+    public static final String OUTCOME_INSERTED = "inserted";
+    public static final String OUTCOME_UPDATED = "updated";
+    public static final String OUTCOME_SKIPPED = "skipped";
+    public static final String OUTCOME_QUARANTINED = "quarantined";
+
+    private final MeterRegistry registry;
+
+    public IngestionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @param source file или url
+     */
+    public void bytesRead(String source, long bytes) {
+        Counter.builder(PREFIX + "xml.bytes.read")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /**
+     * @param stage read (разбор документа) или infer (определение структуры таблиц)
+     */
+    public void parseTime(String stage, long nanos) {
+        Timer.builder(PREFIX + "xml.parse")
+                .tag("stage", stage)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rowsExtracted(String table, int rows) {
+        Counter.builder(PREFIX + "rows.extracted")
+                .tag("table", table)
+                .register(registry)
+                .increment(rows);
+    }
+
+    public void coercionFailure(String table, String type) {
+        Counter.builder(PREFIX + "coercion.failures")
+                .tag("table", table)
+                .tag("type", type)
+                .register(registry)
+                .increment();
+    }
+
+    public void batchFlushed(String table, int size, long nanos) {
+        DistributionSummary.builder(PREFIX + "db.batch.size")
+                .tag("table", table)
+                .register(registry)
+                .record(size);
+
+        Timer.builder(PREFIX + "db.write")
+                .tag("table", table)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param outcome inserted, updated, skipped (UPSERT ничего не изменил) или quarantined
+     */
+    public void rowsWritten(String table, String outcome, long rows) {
+        if (rows <= 0) {
+            return;
+        }
+        Counter.builder(PREFIX + "db.rows")
+                .tag("table", table)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment(rows);
+    }
+
+    /**
+     * Сводка по всем метрикам импорта для печати в конце CLI-прогона.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder("\nМетрики импорта:\n");
+
+        registry.getMeters().stream()
+                .filter(m -> m.getId().getName().startsWith(PREFIX))
+                .sorted(Comparator.comparing((Meter m) -> m.getId().getName())
+                        .thenComparing(m -> m.getId().getTags().toString()))
+                .forEach(m -> sb.append("  ")
+                        .append(m.getId().getName().substring(PREFIX.length()))
+                        .append(tags(m))
+                        .append(" = ")
+                        .append(value(m))
+                        .append('\n'));
+
+        return sb.toString();
+    }
+
+    private static String tags(Meter meter) {
+        if (meter.getId().getTags().isEmpty()) {
+            return "";
+        }
+        return meter.getId().getTags().stream()
+                .map(t -> t.getKey() + "=" + t.getValue())
+                .collect(Collectors.joining(", ", "{", "}"));
+    }
+
+    private static String value(Meter meter) {
+        return switch (meter) {
+            case Counter c -> String.format("%.0f", c.count());
+            case FunctionCounter c -> String.format("%.0f", c.count());
+            case Timer t -> String.format("count=%d total=%.0fms max=%.1fms",
+                    t.count(), t.totalTime(TimeUnit.MILLISECONDS), t.max(TimeUnit.MILLISECONDS));
+            case DistributionSummary s -> String.format("count=%d mean=%.1f max=%.0f", s.count(), s.mean(), s.max());
+            default -> meter.measure().toString();
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.domain.SqlType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Closure-таблица дерева категорий: пара (предок, потомок) с глубиной для каждой категории и всех её предков,
+ * включая саму категорию с глубиной 0. Запрос «категория X и все подкатегории» становится
+ * индексным поиском по ancestor_id вместо рекурсивного CTE.
+ * Таблица пересчитывается по дереву из последнего XML, в БД пишется только разница.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CategoryHierarchyService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ImportProperties properties;
+
+    /**
+     * @return true, если для таблицы нужно строить иерархию
+     */
+    public boolean handles(String tableName) {
+        ImportProperties.Hierarchy hierarchy = properties.getHierarchy();
+        return hierarchy.isEnabled() && hierarchy.getTable().equals(tableName);
+    }
+
+    public String getParentColumn() {
+        return properties.getHierarchy().getParentColumn();
+    }
+
+    /**
+     * Пересчитывает closure-таблицу по связям категория → родитель.
+     * Если дерево не изменилось, в БД ничего не пишется.
+     * @param idType тип колонки id таблицы категорий
+     * @param parents id категории → id родителя (null для корневых)
+     * @param categoriesChanged записала ли загрузка хоть одну строку категорий; если нет и closure-таблица
+     *                          уже есть, она не перечитывается
+     */
+    public void rebuild(SqlType idType, Map<Object, Object> parents, boolean categoriesChanged) {
+        String closureTable = quoteIdentifier(properties.getHierarchy().getClosureTable());
+        if (!categoriesChanged && closureExists(closureTable)) {
+            log.debug("Категории не изменились, иерархия не пересчитывается");
+            return;
+        }
+        ensureTable(closureTable, idType);
+
+        Set<Edge> expected = closure(parents);
+        Set<Edge> actual = new HashSet<>(jdbcTemplate.query(
+                "SELECT ancestor_id, descendant_id, depth FROM " + closureTable,
+                (rs, i) -> new Edge(rs.getObject(1), rs.getObject(2), rs.getInt(3))
+        ));
+
+        List<Object[]> toDelete = new ArrayList<>();
+        for (Edge e : actual) {
+            if (!expected.contains(e)) toDelete.add(new Object[]{e.ancestor(), e.descendant()});
+        }
+        List<Object[]> toInsert = new ArrayList<>();
+        for (Edge e : expected) {
+            if (!actual.contains(e)) toInsert.add(new Object[]{e.ancestor(), e.descendant(), e.depth()});
+        }
+
+        if (toDelete.isEmpty() && toInsert.isEmpty()) {
+            log.debug("Иерархия категорий не изменилась: {} связей", expected.size());
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            batchUpdate("DELETE FROM " + closureTable + " WHERE ancestor_id = ? AND descendant_id = ?", toDelete);
+            batchUpdate("INSERT INTO " + closureTable + " (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)", toInsert);
+        });
+
+        log.info("Иерархия категорий обновлена: удалено {}, добавлено {} связей", toDelete.size(), toInsert.size());
+    }
+
+    /**
+     * Все пары (предок, потомок). Подъём по родителям останавливается на корне,
+     * на родителе, которого нет в XML, и на цикле.
+     */
+    Set<Edge> closure(Map<Object, Object> parents) {
+        Set<Edge> edges = new HashSet<>();
+
+        for (Object id : parents.keySet()) {
+            Set<Object> visited = new HashSet<>();
+            Object ancestor = id;
+            int depth = 0;
+
+            while (ancestor != null && parents.containsKey(ancestor) && visited.add(ancestor)) {
+                edges.add(new Edge(ancestor, id, depth++));
+                ancestor = parents.get(ancestor);
+            }
+        }
+        return edges;
+    }
+
+    private void batchUpdate(String sql, List<Object[]> args) {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        for (int from = 0; from < args.size(); from += batchSize) {
+            jdbcTemplate.batchUpdate(sql, args.subList(from, Math.min(args.size(), from + batchSize)));
+        }
+    }
+
+    private boolean closureExists(String closureTable) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, closureTable));
+    }
+
+    private void ensureTable(String closureTable, SqlType idType) {
+        String type = (idType == null ? SqlType.VARCHAR : idType).getSql();
+
+        jdbcTemplate.execute("""
+               CREATE TABLE IF NOT EXISTS %s (
+                   ancestor_id %s NOT NULL,
+                   descendant_id %s NOT NULL,
+                   depth integer NOT NULL,
+                   PRIMARY KEY (ancestor_id, descendant_id)
+               );
+               CREATE INDEX IF NOT EXISTS %s ON %s (descendant_id);
+               """.formatted(closureTable, type, type,
+                quoteIdentifier(properties.getHierarchy().getClosureTable() + "_descendant_idx"), closureTable));
+    }
+
+    private String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    record Edge(Object ancestor, Object descendant, int depth) {
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.myxmlparser.service;
 
+import com.example.myxmlparser.config.ImportProperties;
 import com.example.myxmlparser.domain.SqlType;
 import com.example.myxmlparser.domain.Table;
+import com.example.myxmlparser.jfr.BatchFlushedEvent;
+import com.example.myxmlparser.jfr.SchemaCheckEvent;
+import com.example.myxmlparser.metrics.IngestionMetrics;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
@@ -11,18 +18,33 @@ import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class DbUpdateService {
 
+    // предел PostgreSQL JDBC на число параметров одного запроса
+    private static final int MAX_BIND_PARAMETERS = 32_767;
+
     private final XmlParserService xmlParserService;
     private final JdbcTemplate jdbcTemplate;
     private final DataSource dataSource;
+    private final IngestionMetrics metrics;
+    private final ImportProperties properties;
+    private final QuarantineService quarantineService;
+    private final CategoryHierarchyService categoryHierarchyService;
+    private final ImportCoordinator importCoordinator;
 
     /**
      * Создает таблицы в БД на основании XML
@@ -46,15 +68,31 @@ public class DbUpdateService {
             throw new IllegalArgumentException("tableName не должен быть пустым");
         }
 
+        if (importCoordinator.isEnabled()) {
+            // параллельный CREATE TABLE IF NOT EXISTS с другой реплики может упасть на каталоге
+            importCoordinator.withLock("myxmlparser:ddl:" + tableName, () -> createOrCheck(tableName));
+        } else {
+            createOrCheck(tableName);
+        }
+    }
+
+    private void createOrCheck(String tableName) {
         Table xmlDef = xmlParserService.getTableDefinition(tableName);
 
-        if (tableExists(tableName)) {
+        String tableType = tableType(tableName);
+        if (tableType != null) {
+            assertPartitioningSameOrThrow(tableName, tableType);
             assertSchemaSameOrThrow(tableName, xmlDef);
             return; // уже создана и структура совпадает
         }
 
         String ddl = xmlParserService.getTableDDL(tableName);
         jdbcTemplate.execute(ddl);
+
+        if (importCoordinator.isEnabled()) {
+            // таблица новая: отметки «загружено» в аренде относятся к удалённой
+            importCoordinator.forget(tableName);
+        }
     }
 
     /**
@@ -71,6 +109,9 @@ public class DbUpdateService {
     /**
      * обновляет данные в таблицах бд
      * если поменялась структура выдает exception
+     * при включённой координации загружает шарды, которые удалось занять, и ждёт,
+     * пока остальные не загрузят другие реплики (или не освободятся после их сбоя),
+     * но не дольше myxmlparser.coordination.timeout
      * @param tableName
      */
     public void update(String tableName) {
@@ -78,11 +119,21 @@ public class DbUpdateService {
             throw new IllegalArgumentException("tableName не должен быть пустым");
         }
 
+        update(tableName, xmlParserService.getTableRows(tableName));
+    }
+
+    /**
+     * То же, что {@link #update(String)}, но со строками, уже извлечёнными через
+     * {@link XmlParserService#getTableRows(String)}: вызывающий код не разбирает таблицу второй раз.
+     */
+    public void update(String tableName, List<Map<String, Object>> rows) {
+        if (tableName == null || tableName.isBlank()) {
+            throw new IllegalArgumentException("tableName не должен быть пустым");
+        }
+
         Table xmlDef = xmlParserService.getTableDefinition(tableName);
         assertSchemaSameOrThrow(tableName, xmlDef);
 
-        List<Map<String, Object>> rows = xmlParserService.getTableRows(tableName);
-
         Map<String, SqlType> columnTypes = xmlDef.getColumns().stream()
                 .collect(Collectors.toMap(
                         Map.Entry::getKey,
@@ -100,68 +151,589 @@ public class DbUpdateService {
                 .map(Map.Entry::getKey)
                 .collect(Collectors.toCollection(LinkedHashSet::new));
 
+        if (!importCoordinator.isEnabled()) {
+            write(tableName, rows, columnTypes, allowedCols);
+            return;
+        }
+
+        String feed = xmlParserService.getFeedFingerprint();
+        int shards = categoryHierarchyService.handles(tableName)
+                ? 1
+                : Math.max(1, properties.getCoordination().getShards());
+
+        // шарды, которые не выполнены ни нами, ни другими репликами; занятые чужими обходятся повторно
+        List<Integer> remaining = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            remaining.add(shard);
+        }
+
+        Duration timeout = properties.getCoordination().getTimeout();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            Iterator<Integer> it = remaining.iterator();
+            while (it.hasNext()) {
+                int shard = it.next();
+                String jobKey = tableName + "#" + shard + "/" + shards;
+
+                try (ImportCoordinator.Lease lease = importCoordinator.tryClaim(feed, jobKey)) {
+                    if (lease != null) {
+                        write(tableName, shardRows(rows, shard, shards), columnTypes, allowedCols);
+                        lease.complete();
+                        it.remove();
+                    } else if (importCoordinator.isDone(feed, jobKey)) {
+                        it.remove();
+                    }
+                }
+            }
+
+            if (remaining.isEmpty()) {
+                return;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new ImportAbortedException("Шарды " + remaining + " таблицы '" + tableName
+                        + "' не загружены другими репликами за " + timeout);
+            }
+
+            log.debug("Шарды {} таблицы {} держат другие реплики, повтор через {}",
+                    remaining, tableName, properties.getCoordination().getRetryInterval());
+            try {
+                Thread.sleep(properties.getCoordination().getRetryInterval().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImportAbortedException("Ожидание шардов таблицы '" + tableName + "' прервано: " + remaining);
+            }
+        }
+    }
+
+    /**
+     * Строки шарда: по хешу исходного id, одинаковому на всех репликах.
+     * Строки без id попадают в шард 0, чтобы их отклонил кто-то один.
+     */
+    private List<Map<String, Object>> shardRows(List<Map<String, Object>> rows, int shard, int shards) {
+        if (shards == 1) {
+            return rows;
+        }
+        List<Map<String, Object>> result = new ArrayList<>(rows.size() / shards + 1);
         for (Map<String, Object> row : rows) {
             Object rawId = row.get("id");
-            if (rawId == null || String.valueOf(rawId).isBlank()) {
-                throw new IllegalArgumentException("В XML нет обязательного атрибута id для таблицы: " + tableName);
+            int rowShard = rawId == null ? 0 : Math.floorMod(String.valueOf(rawId).trim().hashCode(), shards);
+            if (rowShard == shard) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    void write(String tableName, List<Map<String, Object>> rows, Map<String, SqlType> columnTypes, Set<String> allowedCols) {
+        // строки копятся в пачки по форме SQL (набору колонок) и пишутся многострочным INSERT;
+        // секционированные таблицы пишутся параллельно, каждая секция — одним потоком.
+        // LIST-секции создаются до старта потоков: CREATE TABLE ... PARTITION OF берёт ACCESS EXCLUSIVE
+        // на родительскую таблицу и остановил бы все потоки, которые в неё пишут
+        ImportProperties.Partitioning partitioning = properties.getPartitioning().get(tableName);
+        int lanes = partitioning == null ? 1 : Math.max(1, properties.getWriteThreads());
+        Map<Object, Integer> partitionLanes = partitioning == null
+                ? Map.of()
+                : preparePartitions(tableName, rows, columnTypes, partitioning, lanes);
+
+        ExecutorService executor = lanes > 1 ? Executors.newFixedThreadPool(lanes) : null;
+        try {
+            BatchLanes batches = new BatchLanes(tableName, Math.max(1, properties.getBatchSize()), lanes, executor, partitionLanes);
+            writeRows(tableName, rows, columnTypes, allowedCols, batches);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
+        }
+    }
+
+    private void writeRows(String tableName, List<Map<String, Object>> rows, Map<String, SqlType> columnTypes, Set<String> allowedCols,
+                           BatchLanes batches) {
+        // связи категория → родитель для closure-таблицы, только из успешно подготовленных строк
+        Map<Object, Object> parents = categoryHierarchyService.handles(tableName) ? new LinkedHashMap<>() : null;
+        long processed = 0;
+        long rejected = 0;
 
-            Object id = coerceValue(tableName, "id", columnTypes.get("id"), rawId);
+        for (Map<String, Object> row : rows) {
+            processed++;
+
+            Upsert upsert;
+            try {
+                upsert = prepareUpsert(tableName, columnTypes, allowedCols, row);
+            } catch (RowRejectedException ex) {
+                if (!quarantineService.isEnabled()) {
+                    throw flushBeforeThrow(batches, ex);
+                }
+                quarantineService.reject(tableName, row.get("id"), ex);
+                rejected++;
+
+                if (processed >= properties.getQuarantine().getMinRows()) {
+                    try {
+                        assertErrorRateOrThrow(tableName, processed, rejected);
+                    } catch (ImportAbortedException aborted) {
+                        throw flushBeforeThrow(batches, aborted);
+                    }
+                }
+                continue;
+            }
 
-            Map<String, Object> updatable = new LinkedHashMap<>(row);
-            updatable.entrySet().removeIf(e -> !allowedCols.contains(e.getKey()));
-            updatable.remove("id");
+            batches.add(batches.laneOf(upsert.partitionValue()), upsert);
 
-            Map<String, Object> converted = new LinkedHashMap<>();
-            for (Map.Entry<String, Object> e : updatable.entrySet()) {
-                String col = e.getKey();
-                SqlType type = columnTypes.get(col);
-                converted.put(col, coerceValue(tableName, col, type, e.getValue()));
+            if (parents != null) {
+                parents.put(upsert.args()[0], upsert.values().get(categoryHierarchyService.getParentColumn()));
             }
+        }
+
+        batches.flushAll();
+
+        if (rejected > 0) {
+            quarantineService.flush();
+            assertErrorRateOrThrow(tableName, processed, rejected);
+        }
 
-            // UPSERT pattern:
-            // INSERT ... ON CONFLICT (id) DO UPDATE SET col = EXCLUDED.col ...
-            // If there are no updatable columns, do nothing on conflict.
-            List<String> insertCols = new ArrayList<>();
-            insertCols.add("id");
-            insertCols.addAll(converted.keySet());
+        if (parents != null) {
+            // UPSERT пропускает неизменённые строки: 0 записанных значит, что и родители не менялись
+            categoryHierarchyService.rebuild(columnTypes.get("id"), parents, batches.written() > 0);
+        }
+    }
+
+    /**
+     * Дописывает накопленные пачки перед тем, как прервать таблицу: строки до отклонённой уже прошли
+     * проверку и, как при построчной записи, остаются в БД.
+     */
+    private RuntimeException flushBeforeThrow(BatchLanes batches, RuntimeException ex) {
+        try {
+            batches.flushAll();
+        } catch (RuntimeException flushError) {
+            ex.addSuppressed(flushError);
+        }
+        return ex;
+    }
+
+    /**
+     * Останавливает импорт, если доля отклонённых строк превысила myxmlparser.quarantine.max-error-rate.
+     * Перед остановкой отклонённые строки дописываются в dead-letter таблицу.
+     */
+    private void assertErrorRateOrThrow(String tableName, long processed, long rejected) {
+        double rate = (double) rejected / processed;
+        if (rate <= properties.getQuarantine().getMaxErrorRate()) {
+            return;
+        }
+
+        quarantineService.flush();
+        throw new ImportAbortedException(
+                "Импорт таблицы '" + tableName + "' остановлен: отклонено " + rejected + " из " + processed
+                        + " строк (" + String.format(Locale.ROOT, "%.2f%%", rate * 100) + "), порог "
+                        + String.format(Locale.ROOT, "%.2f%%", properties.getQuarantine().getMaxErrorRate() * 100)
+        );
+    }
+
+    /**
+     * Готовит секции до записи и назначает каждой секции дорожку.
+     * LIST: создаёт секции для всех значений из строк, дорожки раздаются секциям по кругу.
+     * HASH: номер секции (остаток) для каждого значения считает сам PostgreSQL через satisfies_hash_partition.
+     * @return значение колонки секционирования → дорожка; пусто, если делить не нужно или не удалось
+     */
+    private Map<Object, Integer> preparePartitions(String tableName, List<Map<String, Object>> rows, Map<String, SqlType> columnTypes,
+                                                   ImportProperties.Partitioning partitioning, int lanes) {
+        String column = partitioning.getColumn();
+        SqlType type = columnTypes.get(column);
+
+        Set<Object> values = new LinkedHashSet<>();
+        for (Map<String, Object> row : rows) {
+            try {
+                Object value = convert(type, row.get(column));
+                if (value != null) {
+                    values.add(value);
+                }
+            } catch (Exception ignored) {
+                // такую строку отклонит prepareUpsert
+            }
+        }
+
+        Map<Object, Integer> partitionLanes = new HashMap<>();
+        switch (partitioning.getStrategy()) {
+            case LIST -> {
+                int index = 0;
+                for (Object value : values) {
+                    createListPartition(tableName, value);
+                    partitionLanes.put(value, index++ % lanes);
+                }
+            }
+            case HASH -> {
+                if (lanes > 1 && !values.isEmpty()) {
+                    hashRemainders(tableName, type, Math.max(1, partitioning.getPartitions()), values)
+                            .forEach((value, remainder) -> partitionLanes.put(value, remainder % lanes));
+                }
+            }
+        }
+        return partitionLanes;
+    }
+
+    /**
+     * Остаток HASH-секции для каждого значения — тем же хешем, которым PostgreSQL раскладывает строки.
+     * Если запрос не удался, возвращает пустую карту: строки пойдут по Java hashCode.
+     */
+    private Map<Object, Integer> hashRemainders(String tableName, SqlType type, int modulus, Set<Object> values) {
+        Map<String, Object> byText = new HashMap<>();
+        for (Object value : values) {
+            byText.put(String.valueOf(value), value);
+        }
+
+        String sql = "SELECT v, (SELECT r FROM generate_series(0, ? - 1) r"
+                + " WHERE satisfies_hash_partition(?::regclass, ?, r, v::" + (type == null ? SqlType.VARCHAR : type).getSql() + ")"
+                + " LIMIT 1) FROM unnest(?::text[]) v";
+
+        Map<Object, Integer> remainders = new HashMap<>();
+        try {
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                        int remainder = rs.getInt(2);
+                        if (!rs.wasNull()) {
+                            remainders.put(byText.get(rs.getString(1)), remainder);
+                        }
+                    },
+                    modulus, quoteQualifiedIdentifier("public", tableName), modulus, byText.keySet().toArray(String[]::new));
+        } catch (DataAccessException e) {
+            log.warn("Не удалось определить HASH-секции таблицы {}, строки делятся по Java hashCode: {}", tableName, e.getMessage());
+            return Map.of();
+        }
+        return remainders;
+    }
+
+    /**
+     * Создаёт LIST-секцию для значения колонки секционирования, если её ещё нет.
+     */
+    private void createListPartition(String tableName, Object value) {
+        String partition = PartitionNames.listPartition(tableName, value);
+        String ddl = "CREATE TABLE IF NOT EXISTS " + quoteIdentifier(partition)
+                + " PARTITION OF " + quoteIdentifier(tableName)
+                + " FOR VALUES IN (" + sqlLiteral(value) + ")";
+
+        if (importCoordinator.isEnabled()) {
+            importCoordinator.withLock("myxmlparser:ddl:" + tableName, () -> jdbcTemplate.execute(ddl));
+        } else {
+            jdbcTemplate.execute(ddl);
+        }
+    }
+
+    /**
+     * Удаляет LIST-секцию таблицы вместе с данными — вместо DELETE по строкам.
+     * @param value значение колонки секционирования (например, поставщик)
+     */
+    public void dropListPartition(String tableName, Object value) {
+        if (tableName == null || tableName.isBlank()) {
+            throw new IllegalArgumentException("tableName не должен быть пустым");
+        }
+        ImportProperties.Partitioning partitioning = properties.getPartitioning().get(tableName);
+        if (partitioning == null || partitioning.getStrategy() != ImportProperties.Partitioning.Strategy.LIST) {
+            throw new IllegalArgumentException("Таблица не секционирована по LIST: " + tableName);
+        }
+
+        dropTable("public", PartitionNames.listPartition(tableName, value), false);
+        if (importCoordinator.isEnabled()) {
+            importCoordinator.forget(tableName);
+        }
+    }
+
+    private String sqlLiteral(Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        return "'" + String.valueOf(value).replace("'", "''") + "'";
+    }
+
+    /**
+     * Отправляет пачку UPSERT одной формы одним многострочным INSERT ... RETURNING (xmax = 0)
+     * и считает вставленные, обновлённые и пропущенные строки по его результату:
+     * xmax = 0 у новой версии строки бывает только после вставки, а строки, которые
+     * UPSERT не изменил (DO NOTHING или значения совпали), в RETURNING не попадают.
+     * @return число вставленных и обновлённых строк
+     */
+    private long flush(String tableName, Upsert template, List<Object[]> batch) {
+        int params = template.args().length;
+        int perStatement = Math.max(1, Math.min(batch.size(), MAX_BIND_PARAMETERS / params));
+
+        long written = 0;
+        for (int from = 0; from < batch.size(); from += perStatement) {
+            written += flushStatement(tableName, template, batch.subList(from, Math.min(batch.size(), from + perStatement)));
+        }
+        return written;
+    }
 
-            String colsClause = insertCols.stream()
+    private long flushStatement(String tableName, Upsert template, List<Object[]> rows) {
+        String sql = template.sql(rows.size()) + " RETURNING (xmax = 0) AS inserted";
+        log.debug("{} [{} строк]", template.sql(), rows.size());
+
+        Object[] args = new Object[rows.size() * template.args().length];
+        int i = 0;
+        for (Object[] row : rows) {
+            System.arraycopy(row, 0, args, i, row.length);
+            i += row.length;
+        }
+
+        BatchFlushedEvent event = new BatchFlushedEvent();
+        event.begin();
+        long start = System.nanoTime();
+        List<Boolean> returned = jdbcTemplate.queryForList(sql, Boolean.class, args);
+        metrics.batchFlushed(tableName, rows.size(), System.nanoTime() - start);
+
+        if (event.shouldCommit()) {
+            event.setTable(tableName);
+            event.setRows(rows.size());
+            event.setBytes(BatchFlushedEvent.estimateBytes(rows));
+            event.setSql(template.sql());
+            event.commit();
+        }
+
+        long inserted = returned.stream().filter(Boolean.TRUE::equals).count();
+        long updated = returned.size() - inserted;
+
+        metrics.rowsWritten(tableName, IngestionMetrics.OUTCOME_INSERTED, inserted);
+        metrics.rowsWritten(tableName, IngestionMetrics.OUTCOME_UPDATED, updated);
+        metrics.rowsWritten(tableName, IngestionMetrics.OUTCOME_SKIPPED, rows.size() - returned.size());
+        return returned.size();
+    }
+
+    /**
+     * Готовит UPSERT для одной строки из XML: приводит значения к типам колонок
+     * и собирает SQL вида INSERT ... ON CONFLICT (id) DO UPDATE SET ... WHERE значения изменились
+     */
+    Upsert prepareUpsert(String tableName, Map<String, SqlType> columnTypes, Set<String> allowedCols, Map<String, Object> row) {
+        Object rawId = row.get("id");
+        if (rawId == null || String.valueOf(rawId).isBlank()) {
+            throw new RowRejectedException(
+                    "В XML нет обязательного атрибута id для таблицы: " + tableName, null, tableName, "id", rawId);
+        }
+
+        Object id = coerceValue(tableName, "id", columnTypes.get("id"), rawId);
+
+        Map<String, Object> updatable = new LinkedHashMap<>(row);
+        updatable.entrySet().removeIf(e -> !allowedCols.contains(e.getKey()));
+        updatable.remove("id");
+
+        Map<String, Object> converted = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : updatable.entrySet()) {
+            String col = e.getKey();
+            SqlType type = columnTypes.get(col);
+            converted.put(col, coerceValue(tableName, col, type, e.getValue()));
+        }
+
+        // у секционированной таблицы по другой колонке первичный ключ (id, column)
+        ImportProperties.Partitioning partitioning = properties.getPartitioning().get(tableName);
+        String partitionColumn = partitioning == null ? "id" : partitioning.getColumn();
+
+        List<String> conflictCols = new ArrayList<>();
+        conflictCols.add("id");
+
+        Object partitionValue = id;
+        if (!partitionColumn.equals("id")) {
+            partitionValue = converted.get(partitionColumn);
+            if (partitionValue == null) {
+                throw new RowRejectedException(
+                        "Нет значения колонки секционирования " + partitionColumn + " для таблицы: " + tableName,
+                        null, tableName, partitionColumn, row.get(partitionColumn));
+            }
+            conflictCols.add(partitionColumn);
+        }
+
+        Set<String> setCols = new LinkedHashSet<>(converted.keySet());
+        setCols.removeAll(conflictCols);
+
+        // UPSERT pattern:
+        // INSERT ... ON CONFLICT (id) DO UPDATE SET col = EXCLUDED.col ...
+        // If there are no updatable columns, do nothing on conflict.
+        // Unchanged rows are not rewritten, so they report 0 affected rows and leave no dead tuples.
+        List<String> insertCols = new ArrayList<>();
+        insertCols.add("id");
+        insertCols.addAll(converted.keySet());
+
+        String colsClause = insertCols.stream()
+                .map(this::quoteIdentifier)
+                .collect(Collectors.joining(", "));
+
+        String valuesClause = insertCols.stream()
+                .map(c -> "?")
+                .collect(Collectors.joining(", "));
+
+        String conflictAction;
+        if (setCols.isEmpty()) {
+            conflictAction = "DO NOTHING";
+        } else {
+            String updateSetClause = setCols.stream()
                     .map(this::quoteIdentifier)
+                    .map(c -> c + " = EXCLUDED." + c)
                     .collect(Collectors.joining(", "));
-
-            String valuesClause = insertCols.stream()
-                    .map(c -> "?")
+            String currentCols = setCols.stream()
+                    .map(c -> "cur." + quoteIdentifier(c))
+                    .collect(Collectors.joining(", "));
+            String excludedCols = setCols.stream()
+                    .map(c -> "EXCLUDED." + quoteIdentifier(c))
                     .collect(Collectors.joining(", "));
+            conflictAction = "DO UPDATE SET " + updateSetClause
+                    + " WHERE (" + currentCols + ") IS DISTINCT FROM (" + excludedCols + ")";
+        }
+
+        String insert = "INSERT INTO " + quoteIdentifier(tableName) + " AS cur"
+                + " (" + colsClause + ")"
+                + " VALUES ";
+        String conflict = " ON CONFLICT (" + conflictCols.stream().map(this::quoteIdentifier).collect(Collectors.joining(", ")) + ") "
+                + conflictAction;
+
+        List<Object> args = new ArrayList<>();
+        args.add(id);
+        args.addAll(converted.values());
+
+        return new Upsert(insert, "(" + valuesClause + ")", conflict, args.toArray(), partitionValue, converted);
+    }
+
+    /**
+     * UPSERT одной строки; строки одной формы склеиваются в один INSERT через {@link #sql(int)}.
+     * @param partitionValue значение колонки секционирования (id, если таблица не секционирована)
+     * @param values приведённые значения колонок строки, кроме id
+     */
+    record Upsert(String insert, String tuple, String conflict, Object[] args, Object partitionValue, Map<String, Object> values) {
+
+        /**
+         * SQL для одной строки; он же — форма, по которой строки группируются в пачки.
+         */
+        String sql() {
+            return sql(1);
+        }
+
+        String sql(int rows) {
+            return insert + String.join(", ", Collections.nCopies(rows, tuple)) + conflict;
+        }
+    }
+
+    /**
+     * Пачки UPSERT по дорожкам записи. Дорожка отправляет свои пачки строго по очереди,
+     * разные дорожки — параллельно на executor. Дорожка выбирается по секции строки
+     * (см. preparePartitions), а если секция не известна — по Java hashCode значения колонки
+     * секционирования. В обоих случаях одно значение всегда попадает в одну дорожку,
+     * поэтому порядок записи одной строки сохраняется.
+     * Внутри дорожки пачки копятся по форме SQL; если id уже ждёт в какой-либо пачке дорожки,
+     * все накопленные пачки отправляются раньше новой строки. Так последняя строка с этим id побеждает,
+     * а один многострочный INSERT ... ON CONFLICT DO UPDATE не задевает строку дважды (PostgreSQL это запрещает).
+     * Без executor пачки пишутся в текущем потоке.
+     */
+    private final class BatchLanes {
+
+        private final String tableName;
+        private final int batchSize;
+        private final ExecutorService executor;
+        // форма SQL → пачка; первая строка пачки служит шаблоном многострочного INSERT
+        private final List<Map<String, PendingBatch>> pending = new ArrayList<>();
+        // id, ждущие отправки в пачках дорожки
+        private final List<Set<Object>> pendingIds = new ArrayList<>();
+        private final CompletableFuture<?>[] tails;
+        private final AtomicLong written = new AtomicLong();
+        private final Map<Object, Integer> partitionLanes;
+
+        BatchLanes(String tableName, int batchSize, int lanes, ExecutorService executor, Map<Object, Integer> partitionLanes) {
+            this.tableName = tableName;
+            this.batchSize = batchSize;
+            this.executor = executor;
+            this.partitionLanes = partitionLanes;
+            this.tails = new CompletableFuture<?>[lanes];
+            for (int i = 0; i < lanes; i++) {
+                pending.add(new LinkedHashMap<>());
+                pendingIds.add(new HashSet<>());
+                tails[i] = CompletableFuture.completedFuture(null);
+            }
+        }
+
+        int laneOf(Object partitionValue) {
+            Integer lane = partitionLanes.get(partitionValue);
+            return lane != null ? lane : Math.floorMod(Objects.hashCode(partitionValue), tails.length);
+        }
+
+        void add(int lane, Upsert upsert) {
+            if (tails[lane].isCompletedExceptionally()) {
+                await();
+            }
+
+            Object id = upsert.args()[0];
+            if (pendingIds.get(lane).contains(id)) {
+                flushLane(lane);
+            }
+
+            String sql = upsert.sql();
+            Map<String, PendingBatch> lanePending = pending.get(lane);
+            PendingBatch batch = lanePending.computeIfAbsent(sql, k -> new PendingBatch(upsert, new ArrayList<>(batchSize)));
+            batch.rows().add(upsert.args());
+            pendingIds.get(lane).add(id);
+
+            if (batch.rows().size() >= batchSize) {
+                lanePending.remove(sql);
+                for (Object[] sent : batch.rows()) {
+                    pendingIds.get(lane).remove(sent[0]);
+                }
+                submit(lane, batch);
+            }
+        }
+
+        /**
+         * @return сколько строк вставлено или обновлено отправленными пачками
+         */
+        long written() {
+            return written.get();
+        }
+
+        void flushAll() {
+            for (int lane = 0; lane < tails.length; lane++) {
+                flushLane(lane);
+            }
+            await();
+        }
 
-            String conflictAction;
-            if (converted.isEmpty()) {
-                conflictAction = "DO NOTHING";
-            } else {
-                String updateSetClause = converted.keySet().stream()
-                        .map(this::quoteIdentifier)
-                        .map(c -> c + " = EXCLUDED." + c)
-                        .collect(Collectors.joining(", "));
-                conflictAction = "DO UPDATE SET " + updateSetClause;
+        private void flushLane(int lane) {
+            for (PendingBatch batch : pending.get(lane).values()) {
+                submit(lane, batch);
             }
+            pending.get(lane).clear();
+            pendingIds.get(lane).clear();
+        }
 
-            String sql = "INSERT INTO " + quoteIdentifier(tableName)
-                    + " (" + colsClause + ")"
-                    + " VALUES (" + valuesClause + ")"
-                    + " ON CONFLICT (" + quoteIdentifier("id") + ") "
-                    + conflictAction;
+        private void submit(int lane, PendingBatch batch) {
+            if (executor == null) {
+                written.addAndGet(flush(tableName, batch.template(), batch.rows()));
+                return;
+            }
+            tails[lane] = tails[lane].thenRunAsync(
+                    () -> written.addAndGet(flush(tableName, batch.template(), batch.rows())), executor);
+        }
 
-            List<Object> args = new ArrayList<>();
-            args.add(id);
-            args.addAll(converted.values());
+        private void await() {
+            try {
+                CompletableFuture.allOf(tails).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) {
+                    throw re;
+                }
+                throw e;
+            }
+        }
+    }
 
-            System.out.println(sql);
+    private record PendingBatch(Upsert template, List<Object[]> rows) {
+    }
 
-            jdbcTemplate.update(sql, args.toArray());
+    Object coerceValue(String tableName, String column, SqlType type, Object raw) {
+        try {
+            return convert(type, raw);
+        } catch (Exception ex) {
+            metrics.coercionFailure(tableName, type.getSql());
+            throw new RowRejectedException(
+                    "Не удалось преобразовать значение для " + tableName + "." + column
+                            + " к типу " + type.getSql() + ": raw=" + raw + " (" + raw.getClass().getName() + ")",
+                    ex,
+                    tableName,
+                    column,
+                    raw
+            );
         }
     }
 
-    private Object coerceValue(String tableName, String column, SqlType type, Object raw) {
+    private static Object convert(SqlType type, Object raw) {
         if (raw == null) {
             return null;
         }
@@ -174,48 +746,40 @@ public class DbUpdateService {
             return raw;
         }
 
-        try {
-            return switch (type) {
-                case INT -> {
-                    if (raw instanceof Integer i) yield i;
-                    if (raw instanceof Number n) yield n.intValue();
-                    yield Integer.parseInt(raw.toString().trim());
-                }
-                case BIGINT -> {
-                    if (raw instanceof Long l) yield l;
-                    if (raw instanceof Number n) yield n.longValue();
-                    yield Long.parseLong(raw.toString().trim());
-                }
-                case DECIMAL -> {
-                    if (raw instanceof BigDecimal bd) yield bd;
-                    if (raw instanceof Number n) yield BigDecimal.valueOf(n.doubleValue());
-                    yield new BigDecimal(raw.toString().trim().replace(',', '.'));
-                }
-                case BOOLEAN -> {
-                    if (raw instanceof Boolean b) yield b;
-                    String s = raw.toString().trim().toLowerCase(Locale.ROOT);
-                    if (s.equals("1") || s.equals("true") || s.equals("t") || s.equals("yes")) yield true;
-                    if (s.equals("0") || s.equals("false") || s.equals("f") || s.equals("no")) yield false;
-                    yield Boolean.parseBoolean(s);
-                }
-                case DATE -> {
-                    if (raw instanceof LocalDate d) yield d;
-                    yield LocalDate.parse(raw.toString().trim());
-                }
-                case TIMESTAMP -> {
-                    if (raw instanceof LocalDateTime dt) yield dt;
-                    // Accept ISO-8601 like "2024-01-31T12:34:56"
-                    yield LocalDateTime.parse(raw.toString().trim());
-                }
-                case VARCHAR -> raw.toString();
-            };
-        } catch (Exception ex) {
-            throw new IllegalArgumentException(
-                    "Не удалось преобразовать значение для " + tableName + "." + column
-                            + " к типу " + type.getSql() + ": raw=" + raw + " (" + raw.getClass().getName() + ")",
-                    ex
-            );
-        }
+        return switch (type) {
+            case INT -> {
+                if (raw instanceof Integer i) yield i;
+                if (raw instanceof Number n) yield n.intValue();
+                yield Integer.parseInt(raw.toString().trim());
+            }
+            case BIGINT -> {
+                if (raw instanceof Long l) yield l;
+                if (raw instanceof Number n) yield n.longValue();
+                yield Long.parseLong(raw.toString().trim());
+            }
+            case DECIMAL -> {
+                if (raw instanceof BigDecimal bd) yield bd;
+                if (raw instanceof Number n) yield BigDecimal.valueOf(n.doubleValue());
+                yield new BigDecimal(raw.toString().trim().replace(',', '.'));
+            }
+            case BOOLEAN -> {
+                if (raw instanceof Boolean b) yield b;
+                String s = raw.toString().trim().toLowerCase(Locale.ROOT);
+                if (s.equals("1") || s.equals("true") || s.equals("t") || s.equals("yes")) yield true;
+                if (s.equals("0") || s.equals("false") || s.equals("f") || s.equals("no")) yield false;
+                yield Boolean.parseBoolean(s);
+            }
+            case DATE -> {
+                if (raw instanceof LocalDate d) yield d;
+                yield LocalDate.parse(raw.toString().trim());
+            }
+            case TIMESTAMP -> {
+                if (raw instanceof LocalDateTime dt) yield dt;
+                // Accept ISO-8601 like "2024-01-31T12:34:56"
+                yield LocalDateTime.parse(raw.toString().trim());
+            }
+            case VARCHAR -> raw.toString();
+        };
     }
 
     /**
@@ -280,12 +844,16 @@ public class DbUpdateService {
                 + (cascade ? " CASCADE" : "");
 
         jdbcTemplate.execute(sql);
+        quarantineService.tableDropped(tableName);
+        if (importCoordinator.isEnabled()) {
+            importCoordinator.forget(tableName);
+        }
     }
 
     private List<String> listTables(String schema) {
         try (Connection c = dataSource.getConnection()) {
             DatabaseMetaData meta = c.getMetaData();
-            try (ResultSet rs = meta.getTables(null, schema, null, new String[]{"TABLE"})) {
+            try (ResultSet rs = meta.getTables(null, schema, null, new String[]{"TABLE", "PARTITIONED TABLE"})) {
                 List<String> names = new ArrayList<>();
                 while (rs.next()) {
                     names.add(rs.getString("TABLE_NAME"));
@@ -301,19 +869,58 @@ public class DbUpdateService {
         return quoteIdentifier(schema) + "." + quoteIdentifier(identifier);
     }
 
-    private boolean tableExists(String tableName) {
+    /**
+     * @return TABLE_TYPE из метаданных ("TABLE" или "PARTITIONED TABLE") или null, если таблицы нет
+     */
+    private String tableType(String tableName) {
         try (Connection c = dataSource.getConnection()) {
             DatabaseMetaData meta = c.getMetaData();
 
-            try (ResultSet rs = meta.getTables(null, "public", tableName, new String[]{"TABLE"})) {
-                return rs.next();
+            try (ResultSet rs = meta.getTables(null, "public", tableName, new String[]{"TABLE", "PARTITIONED TABLE"})) {
+                return rs.next() ? rs.getString("TABLE_TYPE") : null;
             }
         } catch (Exception e) {
             throw new RuntimeException("Не удалось проверить существование таблицы: " + tableName, e);
         }
     }
 
+    /**
+     * Сверяет секционирование существующей таблицы с myxmlparser.partitioning:
+     * CREATE TABLE IF NOT EXISTS не превратит обычную таблицу в секционированную, и наоборот.
+     */
+    private void assertPartitioningSameOrThrow(String tableName, String tableType) {
+        ImportProperties.Partitioning partitioning = properties.getPartitioning().get(tableName);
+        boolean partitioned = "PARTITIONED TABLE".equals(tableType);
+
+        if (partitioning == null && !partitioned) {
+            return;
+        }
+        if (partitioning == null) {
+            throw new SchemaMismatchException(
+                    "Таблица '" + tableName + "' в БД секционирована, а в myxmlparser.partitioning она не описана"
+            );
+        }
+        if (!partitioned) {
+            throw new SchemaMismatchException(
+                    "Таблица '" + tableName + "' в БД не секционирована, а в myxmlparser.partitioning задано "
+                            + partitioning.getStrategy() + " (" + partitioning.getColumn() + ")"
+            );
+        }
+
+        String actual = jdbcTemplate.queryForObject(
+                "SELECT pg_get_partkeydef(to_regclass(?))", String.class, quoteQualifiedIdentifier("public", tableName));
+        String expected = partitioning.getStrategy().name() + " (" + partitioning.getColumn() + ")";
+        if (actual == null || !actual.replace("\"", "").equalsIgnoreCase(expected)) {
+            throw new SchemaMismatchException(
+                    "Секционирование таблицы '" + tableName + "' не совпадает. В БД: " + actual + ", в настройках: " + expected
+            );
+        }
+    }
+
     private void assertSchemaSameOrThrow(String tableName, Table xmlDef) {
+        SchemaCheckEvent event = new SchemaCheckEvent();
+        event.begin();
+
         // Ожидаемые колонки из XML
         // Разрешаем created_at в БД, даже если её нет в XML.
         Set<String> expected = xmlDef.getColumns().stream()
@@ -325,7 +932,14 @@ public class DbUpdateService {
         Set<String> actualMinusService = new LinkedHashSet<>(actual);
         actualMinusService.remove("created_at");
 
-        if (!actualMinusService.equals(expected)) {
+        boolean matched = actualMinusService.equals(expected);
+        if (event.shouldCommit()) {
+            event.setTable(tableName);
+            event.setMatched(matched);
+            event.commit();
+        }
+
+        if (!matched) {
             throw new SchemaMismatchException(
                     "Структура таблицы в БД отличается от XML для '" + tableName + "'.\n" +
                             "XML: " + expected + "\n" +
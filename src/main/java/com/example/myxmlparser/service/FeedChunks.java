@@ -0,0 +1,200 @@
+package com.example.myxmlparser.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Разбиение отображённого в память фида на части по границам строк таблицы (например, {@code <offer} внутри
+ * {@code shop/offers}). Каждая часть оборачивается в XML-пролог и тег таблицы и разбирается отдельно;
+ * остальной документ разбирается как «скелет» с пустой таблицей.
+ * Поиск идёт по байтам ASCII, поэтому подходит для UTF-8 и однобайтовых кодировок (windows-1251).
+ */
+final class FeedChunks {
+
+    private static final int PROLOG_LOOKUP = 8;
+    private static final long CHECKSUM_STEP = 1L << 30;
+
+    private FeedChunks() {
+    }
+
+    /**
+     * @param contentStart первый байт после открывающего тега таблицы
+     * @param contentEnd   первый байт закрывающего тега таблицы
+     * @param chunks       пары [from, to) внутри содержимого таблицы
+     */
+    record Layout(long size, long contentStart, long contentEnd, byte[] prolog, byte[] startTag, byte[] endTag,
+                  List<long[]> chunks) {
+    }
+
+    /**
+     * @return разметка или null, если таблица не найдена или пустая (тогда фид читается последовательно)
+     */
+    static Layout locate(MemorySegment segment, String table, String rowElement, long chunkSize) {
+        long size = segment.byteSize();
+
+        long shop = indexOfTag(segment, "shop", 0, size);
+        if (shop < 0) return null;
+
+        long tagStart = indexOfTag(segment, table, shop, size);
+        if (tagStart < 0) return null;
+
+        long tagEnd = indexOf(segment, ascii(">"), tagStart, size);
+        if (tagEnd < 0 || segment.get(ValueLayout.JAVA_BYTE, tagEnd - 1) == '/') return null;
+        long contentStart = tagEnd + 1;
+
+        long contentEnd = lastIndexOf(segment, ascii("</" + table), contentStart, size);
+        if (contentEnd < 0) return null;
+
+        List<long[]> chunks = new ArrayList<>();
+        long from = contentStart;
+        long step = Math.max(1, chunkSize);
+        while (from < contentEnd) {
+            long to = from + step >= contentEnd ? contentEnd : indexOfTag(segment, rowElement, from + step, contentEnd);
+            if (to < 0) to = contentEnd;
+            chunks.add(new long[]{from, to});
+            from = to;
+        }
+
+        return new Layout(size, contentStart, contentEnd, prolog(segment), copy(segment, tagStart, contentStart),
+                ascii("</" + table + ">"), chunks);
+    }
+
+    /**
+     * Документ без содержимого таблицы.
+     */
+    static InputStream skeleton(MemorySegment segment, Layout layout) {
+        return new SequenceInputStream(
+                new SegmentInputStream(segment, 0, layout.contentStart()),
+                new SegmentInputStream(segment, layout.contentEnd(), layout.size()));
+    }
+
+    /**
+     * Часть таблицы как отдельный документ: пролог, тег таблицы, строки и закрывающий тег.
+     */
+    static InputStream chunk(MemorySegment segment, Layout layout, long from, long to) {
+        return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(layout.prolog()),
+                new ByteArrayInputStream(layout.startTag()),
+                new SegmentInputStream(segment, from, to),
+                new ByteArrayInputStream(layout.endTag()))));
+    }
+
+    /**
+     * CRC32C всего файла — тот же, что считает последовательное чтение.
+     */
+    static long checksum(MemorySegment segment) {
+        CRC32C crc = new CRC32C();
+        for (long from = 0; from < segment.byteSize(); from += CHECKSUM_STEP) {
+            long len = Math.min(CHECKSUM_STEP, segment.byteSize() - from);
+            crc.update(segment.asSlice(from, len).asByteBuffer());
+        }
+        return crc.getValue();
+    }
+
+    private static byte[] prolog(MemorySegment segment) {
+        long size = segment.byteSize();
+        long decl = indexOf(segment, ascii("<?xml"), 0, Math.min(size, PROLOG_LOOKUP));
+        if (decl < 0) {
+            return new byte[0];
+        }
+        long end = indexOf(segment, ascii("?>"), decl, size);
+        return end < 0 ? new byte[0] : copy(segment, 0, end + 2);
+    }
+
+    /**
+     * Начало открывающего тега name: за именем идёт пробел, '>' или '/'.
+     */
+    private static long indexOfTag(MemorySegment segment, String name, long from, long to) {
+        byte[] pattern = ascii("<" + name);
+        long i = from;
+        while (true) {
+            i = indexOf(segment, pattern, i, to);
+            if (i < 0) return -1;
+
+            long next = i + pattern.length;
+            if (next >= to) return -1;
+
+            byte b = segment.get(ValueLayout.JAVA_BYTE, next);
+            if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                return i;
+            }
+            i++;
+        }
+    }
+
+    private static long indexOf(MemorySegment segment, byte[] pattern, long from, long to) {
+        long last = to - pattern.length;
+        outer:
+        for (long i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (segment.get(ValueLayout.JAVA_BYTE, i + j) != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static long lastIndexOf(MemorySegment segment, byte[] pattern, long from, long to) {
+        outer:
+        for (long i = to - pattern.length; i >= from; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (segment.get(ValueLayout.JAVA_BYTE, i + j) != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] copy(MemorySegment segment, long from, long to) {
+        return segment.asSlice(from, to - from).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Поток байтов [from, to) отображённого файла.
+     */
+    private static final class SegmentInputStream extends InputStream {
+
+        private final MemorySegment segment;
+        private final long to;
+        private long position;
+
+        SegmentInputStream(MemorySegment segment, long from, long to) {
+            this.segment = segment;
+            this.position = from;
+            this.to = to;
+        }
+
+        @Override
+        public int read() {
+            return position < to ? segment.get(ValueLayout.JAVA_BYTE, position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (position >= to) return -1;
+
+            int n = (int) Math.min(len, to - position);
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, to - position);
+        }
+    }
+}
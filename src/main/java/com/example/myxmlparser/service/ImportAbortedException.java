@@ -0,0 +1,7 @@
+package com.example.myxmlparser.service;
+
+public class ImportAbortedException extends RuntimeException {
+    public ImportAbortedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Координация импорта между репликами через advisory-блокировки PostgreSQL и таблицу аренд.
+ * Блокировка сессионная: её держит соединение аренды, и PostgreSQL снимает её сам, только если сессия
+ * закончилась (реплика упала). Соединения берутся из пула, и close() возвращает их туда открытыми,
+ * поэтому блокировка снимается явно перед close(); если снять её не удалось, соединение выбрасывается из пула.
+ * Таблица аренд хранит владельца и статус и помечает работу над фидом выполненной,
+ * чтобы другие реплики её не повторяли.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ImportCoordinator {
+
+    private static final String STATUS_RUNNING = "running";
+    private static final String STATUS_DONE = "done";
+    private static final String STATUS_FAILED = "failed";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ImportProperties properties;
+
+    private volatile boolean tableReady;
+
+    public boolean isEnabled() {
+        return properties.getCoordination().isEnabled();
+    }
+
+    /**
+     * Выполняет действие под блокирующей advisory-блокировкой по ключу (например, DDL таблицы).
+     */
+    public void withLock(String key, Runnable action) {
+        Connection c;
+        try {
+            c = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось получить advisory-блокировку: " + key, e);
+        }
+
+        boolean locked = false;
+        try {
+            advisory(c, "pg_advisory_lock", key);
+            locked = true;
+            action.run();
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось получить advisory-блокировку: " + key, e);
+        } finally {
+            release(c, key, locked);
+        }
+    }
+
+    /**
+     * Пытается занять работу без ожидания. Занять можно и работу со статусом failed,
+     * и работу в статусе running, чья блокировка свободна (реплика упала, не успев её закрыть).
+     * @param feed отпечаток фида: работа над другим фидом не считается выполненной
+     * @param jobKey таблица или шард таблицы; одновременно её пишет только одна реплика
+     * @return аренда или null, если работу держит другая реплика или она уже выполнена для этого фида
+     */
+    public Lease tryClaim(String feed, String jobKey) {
+        ensureTable();
+
+        Connection c = null;
+        boolean locked = false;
+        try {
+            c = dataSource.getConnection();
+            locked = advisory(c, "pg_try_advisory_lock", jobKey);
+            if (!locked) {
+                log.debug("{} занят другой репликой", jobKey);
+                release(c, jobKey, false);
+                return null;
+            }
+
+            if (isDone(feed, jobKey)) {
+                log.debug("{} уже загружен для фида {}", jobKey, feed);
+                release(c, jobKey, true);
+                return null;
+            }
+
+            jdbcTemplate.update("INSERT INTO " + leaseTable() + " (feed, job_key, owner, status) VALUES (?, ?, ?, ?)"
+                            + " ON CONFLICT (feed, job_key) DO UPDATE SET owner = EXCLUDED.owner, status = EXCLUDED.status,"
+                            + " started_at = now(), finished_at = NULL",
+                    feed, jobKey, owner(), STATUS_RUNNING);
+
+            return new Lease(c, feed, jobKey);
+        } catch (SQLException | RuntimeException e) {
+            if (c != null) {
+                release(c, jobKey, locked);
+            }
+            throw e instanceof RuntimeException re ? re : new RuntimeException("Не удалось занять " + jobKey, e);
+        }
+    }
+
+    /**
+     * @return true, если работа уже выполнена для этого фида какой-либо репликой
+     */
+    public boolean isDone(String feed, String jobKey) {
+        ensureTable();
+
+        Integer done = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM " + leaseTable() + " WHERE feed = ? AND job_key = ? AND status = ?",
+                Integer.class, feed, jobKey, STATUS_DONE);
+        return done != null && done > 0;
+    }
+
+    /**
+     * Забывает аренды таблицы: после DROP или нового CREATE её шарды нужно загрузить заново,
+     * даже если для этого фида они уже помечены выполненными.
+     */
+    public void forget(String tableName) {
+        if (properties.getCoordination().getLeaseTable().equals(tableName)) {
+            // удалили саму таблицу аренд
+            tableReady = false;
+            return;
+        }
+        ensureTable();
+
+        int forgotten = jdbcTemplate.update(
+                "DELETE FROM " + leaseTable() + " WHERE split_part(job_key, '#', 1) = ?", tableName);
+        if (forgotten > 0) {
+            log.info("Сброшено {} аренд таблицы {}", forgotten, tableName);
+        }
+    }
+
+    private boolean advisory(Connection c, String function, String key) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT " + function + "(hashtextextended(?, 0))")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                // pg_advisory_lock возвращает void
+                Object result = rs.getObject(1);
+                return !(result instanceof Boolean b) || b;
+            }
+        }
+    }
+
+    /**
+     * Снимает блокировку и возвращает соединение в пул. Если снятие не подтвердилось,
+     * снимает все advisory-блокировки сессии, а если и это не удалось — выбрасывает соединение из пула:
+     * иначе блокировку держало бы простаивающее соединение пула.
+     */
+    private void release(Connection c, String key, boolean locked) {
+        boolean unlocked = !locked;
+        if (locked) {
+            try {
+                unlocked = advisory(c, "pg_advisory_unlock", key);
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Не удалось снять блокировку {}: {}", key, e.getMessage());
+            }
+        }
+        if (!unlocked) {
+            try (Statement st = c.createStatement()) {
+                st.execute("SELECT pg_advisory_unlock_all()");
+                unlocked = true;
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Не удалось снять блокировки соединения {}: {}", key, e.getMessage());
+            }
+        }
+        if (!unlocked) {
+            evict(c, key);
+        }
+
+        try {
+            c.close();
+        } catch (SQLException e) {
+            log.warn("Не удалось закрыть соединение {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void evict(Connection c, String key) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                dataSource.unwrap(HikariDataSource.class).evictConnection(c);
+                return;
+            }
+            // не Hikari: соединение обрывается, и сессия снимает блокировку вместе с собой
+            c.abort(Runnable::run);
+        } catch (SQLException | RuntimeException e) {
+            log.error("Не удалось выбросить соединение с блокировкой {} из пула: {}", key, e.getMessage());
+        }
+    }
+
+    private void ensureTable() {
+        if (tableReady) {
+            return;
+        }
+
+        withLock("myxmlparser:" + properties.getCoordination().getLeaseTable(), () -> jdbcTemplate.execute("""
+               CREATE TABLE IF NOT EXISTS %s (
+                   feed varchar NOT NULL,
+                   job_key varchar NOT NULL,
+                   owner varchar NOT NULL,
+                   status varchar NOT NULL,
+                   started_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                   finished_at TIMESTAMPTZ,
+                   PRIMARY KEY (feed, job_key)
+               );
+               """.formatted(leaseTable())));
+
+        tableReady = true;
+    }
+
+    private String owner() {
+        String owner = properties.getCoordination().getOwner();
+        if (owner != null && !owner.isBlank()) {
+            return owner;
+        }
+        try {
+            return ProcessHandle.current().pid() + "@" + InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return String.valueOf(ProcessHandle.current().pid());
+        }
+    }
+
+    private String leaseTable() {
+        return "\"" + properties.getCoordination().getLeaseTable().replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Занятая работа. complete() помечает её выполненной для фида;
+     * close() без complete() помечает её failed, и её сможет занять другая реплика.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Connection connection;
+        private final String feed;
+        private final String jobKey;
+        private boolean completed;
+
+        private Lease(Connection connection, String feed, String jobKey) {
+            this.connection = connection;
+            this.feed = feed;
+            this.jobKey = jobKey;
+        }
+
+        public void complete() {
+            finish(STATUS_DONE);
+            completed = true;
+        }
+
+        @Override
+        public void close() {
+            if (!completed) {
+                try {
+                    finish(STATUS_FAILED);
+                } catch (RuntimeException e) {
+                    // строка останется running; со свободной блокировкой её займёт любая реплика
+                    log.warn("Не удалось пометить {} как failed: {}", jobKey, e.getMessage());
+                }
+            }
+            release(connection, jobKey, true);
+        }
+
+        private void finish(String status) {
+            jdbcTemplate.update("UPDATE " + leaseTable() + " SET status = ?, finished_at = now() WHERE feed = ? AND job_key = ?",
+                    status, feed, jobKey);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.myxmlparser.service;
+
+import java.util.Locale;
+
+/**
+ * Имена секций секционированных таблиц.
+ */
+final class PartitionNames {
+
+    private static final int MAX_IDENTIFIER = 63;
+
+    private PartitionNames() {
+    }
+
+    static String hashPartition(String tableName, int remainder) {
+        return tableName + "_p" + remainder;
+    }
+
+    static String defaultPartition(String tableName) {
+        return tableName + "_default";
+    }
+
+    /**
+     * Секция LIST для значения: читаемый суффикс плюс хеш, чтобы разные значения
+     * с одинаковым суффиксом не совпали и имя уложилось в 63 символа PostgreSQL.
+     */
+    static String listPartition(String tableName, Object value) {
+        String raw = String.valueOf(value);
+        String suffix = raw.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_");
+        String hash = Integer.toHexString(raw.hashCode());
+
+        int room = MAX_IDENTIFIER - tableName.length() - hash.length() - 2;
+        if (suffix.length() > room) {
+            suffix = suffix.substring(0, Math.max(0, room));
+        }
+        return tableName + "_" + suffix + "_" + hash;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.metrics.IngestionMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dead-letter таблица для строк, отклонённых при импорте.
+ * Строки копятся в буфере и пишутся пачками через batchUpdate.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class QuarantineService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IngestionMetrics metrics;
+    private final ImportProperties properties;
+
+    private final List<Object[]> buffer = new ArrayList<>();
+    private volatile boolean tableReady;
+
+    public boolean isEnabled() {
+        return properties.getQuarantine().isEnabled();
+    }
+
+    /**
+     * Кладёт отклонённую строку в буфер; при заполнении пачки буфер сбрасывается в БД.
+     */
+    public synchronized void reject(String tableName, Object rowId, RowRejectedException ex) {
+        buffer.add(new Object[]{
+                tableName,
+                rowId == null ? null : String.valueOf(rowId),
+                ex.getColumn(),
+                ex.getRawValue() == null ? null : String.valueOf(ex.getRawValue()),
+                ex.getMessage()
+        });
+        metrics.rowsWritten(tableName, IngestionMetrics.OUTCOME_QUARANTINED, 1);
+
+        if (buffer.size() >= Math.max(1, properties.getBatchSize())) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        ensureTable();
+
+        String sql = "INSERT INTO " + quoteIdentifier(properties.getQuarantine().getTable())
+                + " (table_name, row_id, column_name, raw_value, reason) VALUES (?, ?, ?, ?, ?)";
+        jdbcTemplate.batchUpdate(sql, buffer);
+
+        log.debug("В {} записано отклонённых строк: {}", properties.getQuarantine().getTable(), buffer.size());
+        buffer.clear();
+    }
+
+    /**
+     * Сбрасывает признак созданной dead-letter таблицы, если её удалили: следующая запись создаст её заново.
+     */
+    public void tableDropped(String tableName) {
+        if (properties.getQuarantine().getTable().equals(tableName)) {
+            tableReady = false;
+        }
+    }
+
+    private void ensureTable() {
+        if (tableReady) {
+            return;
+        }
+
+        jdbcTemplate.execute("""
+               CREATE TABLE IF NOT EXISTS %s (
+                   id BIGSERIAL PRIMARY KEY,
+                   table_name varchar NOT NULL,
+                   row_id varchar,
+                   column_name varchar,
+                   raw_value varchar,
+                   reason varchar NOT NULL,
+                   created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+               );
+               """.formatted(quoteIdentifier(properties.getQuarantine().getTable())));
+
+        tableReady = true;
+    }
+
+    private String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.myxmlparser.service;
+
+import lombok.Getter;
+
+/**
+ * Строку XML нельзя записать: нет id или значение не приводится к типу колонки.
+ * В мягком режиме такие строки уходят в dead-letter таблицу, в строгом — прерывают импорт.
+ */
+@Getter
+public class RowRejectedException extends IllegalArgumentException {
+
+    private final String tableName;
+    private final String column;
+    private final Object rawValue;
+
+    public RowRejectedException(String message, Throwable cause, String tableName, String column, Object rawValue) {
+        super(message, cause);
+        this.tableName = tableName;
+        this.column = column;
+        this.rawValue = rawValue;
+    }
+}
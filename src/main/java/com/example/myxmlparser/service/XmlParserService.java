@@ -1,35 +1,74 @@
 package com.example.myxmlparser.service;
 
+import com.example.myxmlparser.config.ImportProperties;
 import com.example.myxmlparser.domain.SqlType;
 import com.example.myxmlparser.domain.Table;
+import com.example.myxmlparser.jfr.FeedReadEvent;
+import com.example.myxmlparser.jfr.RowBatchExtractedEvent;
+import com.example.myxmlparser.jfr.TableSchemaInferredEvent;
+import com.example.myxmlparser.metrics.IngestionMetrics;
 import groovy.xml.XmlSlurper;
 import groovy.xml.slurpersupport.GPathResult;
 import groovy.xml.slurpersupport.NodeChild;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class XmlParserService {
 
+    private final IngestionMetrics metrics;
+    private final ImportProperties properties;
+
     private final List<Table> tables = new ArrayList<>();
     private final List<String> tableNames = new ArrayList<>();
 
     private GPathResult lastDocument;
+    private String lastFeedFingerprint;
+    private Presplit presplit;
 
+    /**
+     * Читает XML из файла. При myxmlparser.parallel-parse.enabled большая таблица (offers)
+     * разбирается по частям параллельно; результат parseXML и getTableRows тот же, что при последовательном чтении.
+     */
     public GPathResult readFromFile(Path xmlPath) {
         if (xmlPath == null) throw new IllegalArgumentException("xmlPath не должен быть null");
+        presplit = null;
 
-        try (InputStream in = Files.newInputStream(xmlPath)) {
-            return slurper().parse(in);
+        if (properties.getParallelParse().isEnabled()) {
+            try {
+                GPathResult document = readFromFileParallel(xmlPath);
+                if (document != null) {
+                    return document;
+                }
+            } catch (XmlParsingException e) {
+                // например, CDATA или сущности DTD на границе частей — последовательный разбор справится
+                log.warn("Параллельный разбор не удался, читаем последовательно: {}", e.getMessage());
+                presplit = null;
+            }
+        }
+
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(xmlPath))) {
+            return parse(in, "file", xmlPath.toString());
         } catch (Exception e) {
             throw new XmlParsingException("Ошибка парсинга XML файла: " + xmlPath, e);
         }
@@ -37,16 +76,124 @@ public class XmlParserService {
 
     public GPathResult readFromUrl(URL url) {
         if (url == null) throw new IllegalArgumentException("xmlPath не должен быть null");
+        presplit = null;
 
-        try (InputStream in = url.openStream()) {
-            return slurper().parse(in);
+        try (CountingInputStream in = new CountingInputStream(url.openStream())) {
+            return parse(in, "url", url.toString());
         } catch (Exception e) {
             throw new XmlParsingException("Ошибка парсинга XML URL: " + url, e);
         }
     }
 
+    private GPathResult parse(CountingInputStream in, String source, String location) throws Exception {
+        FeedReadEvent event = new FeedReadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        presplit = null;
+        try {
+            GPathResult document = slurper().parse(in);
+            lastFeedFingerprint = in.getCount() + "-" + Long.toHexString(in.getChecksum());
+            return document;
+        } finally {
+            metrics.parseTime("read", System.nanoTime() - start);
+            metrics.bytesRead(source, in.getCount());
+
+            if (event.shouldCommit()) {
+                event.setSource(source);
+                event.setLocation(location);
+                event.setBytes(in.getCount());
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Отображает файл в память, разбирает части таблицы на ForkJoinPool и остальной документ как скелет.
+     * @return скелет документа или null, если таблицу не удалось найти
+     */
+    private GPathResult readFromFileParallel(Path xmlPath) {
+        ImportProperties.ParallelParse parallel = properties.getParallelParse();
+
+        FeedReadEvent event = new FeedReadEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(xmlPath, StandardOpenOption.READ);
+             Arena arena = Arena.ofShared()) {
+            long size = channel.size();
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+
+            FeedChunks.Layout layout = FeedChunks.locate(segment, parallel.getTable(), parallel.getRowElement(), parallel.getChunkSize());
+            if (layout == null) {
+                return null;
+            }
+
+            int threads = parallel.getThreads() > 0 ? parallel.getThreads() : Runtime.getRuntime().availableProcessors();
+
+            GPathResult skeleton;
+            long checksum;
+            List<Presplit> parts = new ArrayList<>();
+
+            try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+                List<ForkJoinTask<Presplit>> tasks = new ArrayList<>();
+                for (long[] chunk : layout.chunks()) {
+                    tasks.add(pool.submit(() -> parseChunk(FeedChunks.chunk(segment, layout, chunk[0], chunk[1]))));
+                }
+                ForkJoinTask<Long> checksumTask = pool.submit(() -> FeedChunks.checksum(segment));
+
+                try (InputStream in = FeedChunks.skeleton(segment, layout)) {
+                    skeleton = slurper().parse(in);
+                }
+
+                // порядок частей сохраняется: колонки и строки склеиваются так же, как при одном проходе
+                for (ForkJoinTask<Presplit> task : tasks) {
+                    parts.add(task.join());
+                }
+                checksum = checksumTask.join();
+            }
+
+            List<Map.Entry<String, SqlType>> columns = new ArrayList<>();
+            List<Map<String, Object>> rows = new ArrayList<>();
+            int scanned = 0;
+            for (Presplit part : parts) {
+                for (Map.Entry<String, SqlType> column : part.columns()) {
+                    if (!columns.contains(column)) {
+                        columns.add(column);
+                    }
+                }
+                rows.addAll(part.rows());
+                scanned += part.scanned();
+            }
+
+            presplit = new Presplit(skeleton, parallel.getTable(), columns, scanned, rows, parts.size());
+            lastFeedFingerprint = size + "-" + Long.toHexString(checksum);
+
+            metrics.parseTime("read", System.nanoTime() - start);
+            metrics.bytesRead("file", size);
+
+            if (event.shouldCommit()) {
+                event.setSource("file");
+                event.setLocation(xmlPath.toString());
+                event.setBytes(size);
+                event.commit();
+            }
+
+            return skeleton;
+        } catch (Exception e) {
+            throw new XmlParsingException("Ошибка параллельного парсинга XML файла: " + xmlPath, e);
+        }
+    }
+
+    private Presplit parseChunk(InputStream in) throws Exception {
+        try (in) {
+            GPathResult tableNode = slurper().parse(in);
+            return new Presplit(tableNode, tableNode.name(), inferColumns(tableNode), tableNode.children().size(), extractRows(tableNode), 1);
+        }
+    }
+
     public GPathResult readFromUrl(String url) {
         if (url == null || url.isBlank()) throw new IllegalArgumentException("url не должен быть пустым");
+        presplit = null;
         try {
             return readFromUrl(URI.create(url).toURL());
         } catch (Exception e) {
@@ -54,6 +201,17 @@ public class XmlParserService {
         }
     }
 
+    /**
+     * Отпечаток содержимого последнего прочитанного фида (размер и CRC32C):
+     * одинаков на всех репликах, прочитавших один и тот же фид.
+     */
+    public String getFeedFingerprint() {
+        if (lastFeedFingerprint == null) {
+            throw new IllegalStateException("XML еще не прочитан: вызовите readFromFile() или readFromUrl()");
+        }
+        return lastFeedFingerprint;
+    }
+
     /**
      * Возвращает названия таблиц из XML (currency, categories, offers)
      * @return ArrayList
@@ -65,6 +223,15 @@ public class XmlParserService {
     public void parseXML(GPathResult document) {
         if (document == null) throw new IllegalArgumentException("document не должен быть null");
 
+        long start = System.nanoTime();
+        try {
+            inferTables(document);
+        } finally {
+            metrics.parseTime("infer", System.nanoTime() - start);
+        }
+    }
+
+    private void inferTables(GPathResult document) {
         this.lastDocument = document;
 
         tables.clear();
@@ -84,74 +251,100 @@ public class XmlParserService {
                     continue;
                 }
 
-                if (!childNode.children().isEmpty()) {
+                // таблица, заранее разобранная по частям в readFromFile, в самом документе пустая
+                boolean presplitTable = presplit != null && presplit.document() == document && nodeName.equals(presplit.table());
+                int scanned = presplitTable ? presplit.scanned() : childNode.children().size();
+
+                if (scanned > 0) {
+                    TableSchemaInferredEvent event = new TableSchemaInferredEvent();
+                    event.begin();
+
                     Table table = new Table();
                     table.setName(nodeName);
 
-                    List<Map.Entry<String, SqlType>> columns = new ArrayList<>();
-                    for (Object grandChild : childNode.children()) {
-                        if (grandChild instanceof GPathResult grandChildNode) {
+                    List<Map.Entry<String, SqlType>> columns = presplitTable
+                            ? new ArrayList<>(presplit.columns())
+                            : inferColumns(childNode);
 
-                            Map<String, String> attrs = getAttributes(grandChildNode);
+                    table.setColumns(columns);
+                    tables.add(table);
+                    tableNames.add(table.getName());
+
+                    if (event.shouldCommit()) {
+                        event.setTable(nodeName);
+                        event.setColumns(columns.size());
+                        event.setRows(scanned);
+                        event.commit();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Колонки таблицы по её строкам в порядке первого появления.
+     * Имена колонок приводятся к нижнему регистру — так же, как ключи строк в extractRows.
+     */
+    private List<Map.Entry<String, SqlType>> inferColumns(GPathResult tableNode) {
+        List<Map.Entry<String, SqlType>> columns = new ArrayList<>();
+        for (Object grandChild : tableNode.children()) {
+            if (grandChild instanceof GPathResult grandChildNode) {
+
+                Map<String, String> attrs = getAttributes(grandChildNode);
+
+                String text = grandChildNode.text();
+                text = (text == null) ? "" : text.trim();
+
+                for (Map.Entry<String, String> attr : attrs.entrySet()) {
+                    Map.Entry<String, SqlType> column =
+                            new AbstractMap.SimpleEntry<>(attr.getKey().toLowerCase(), detect(attr.getValue()));
+
+                    if (columns.contains(column)) {
+                        continue;
+                    }
+                    columns.add(column);
+                }
 
-                            String text = grandChildNode.text();
-                            text = (text == null) ? "" : text.trim();
+                boolean hasKids = hasElementChildren(grandChildNode);
+                boolean hasText = grandChildNode.text() != null && !grandChildNode.text().trim().isEmpty();
+                if (hasKids) {
+                    int paramIndex = 0;
 
-                            for (Map.Entry<String, String> attr : attrs.entrySet()) {
-                                Map.Entry<String, SqlType> column =
-                                        new AbstractMap.SimpleEntry<>(attr.getKey().toLowerCase(), detect(attr.getValue()));
+                    for (Object grandGrandChild : grandChildNode.children()) {
+                        if (grandGrandChild instanceof GPathResult grandGrandChildNode) {
+                            String name1 = grandGrandChildNode.name();
 
-                                if (columns.contains(column)) {
-                                    continue;
-                                }
-                                columns.add(column);
+                            if (name1.equals("param")) {
+                                name1 = "param_" + paramIndex++;
                             }
 
-                            boolean hasKids = hasElementChildren(grandChildNode);
-                            boolean hasText = grandChildNode.text() != null && !grandChildNode.text().trim().isEmpty();
-                            if (hasKids) {
-                                int paramIndex = 0;
-
-                                for (Object grandGrandChild : grandChildNode.children()) {
-                                    if (grandGrandChild instanceof GPathResult grandGrandChildNode) {
-                                        String name1 = grandGrandChildNode.name();
-
-                                        if (name1.equals("param")) {
-                                            name1 = "param_" + paramIndex++;
-                                        }
-
-                                        Map.Entry<String, SqlType> column =
-                                                new AbstractMap.SimpleEntry<>(name1.toLowerCase(), SqlType.VARCHAR);
-
-                                        if (columns.contains(column)) {
-                                            continue;
-                                        }
-                                        columns.add(column);
-                                    }
-                                }
-                            } else if (hasText) {
-                                String name1 = grandChildNode.name();
-                                String text1 = grandChildNode.text();
-
-                                Map.Entry<String, SqlType> column =
-                                        new AbstractMap.SimpleEntry<>(name1, detect(text1));
-
-                                if (columns.contains(column)) {
-                                    continue;
-                                }
-                                columns.add(column);
+                            Map.Entry<String, SqlType> column =
+                                    new AbstractMap.SimpleEntry<>(name1.toLowerCase(), SqlType.VARCHAR);
+
+                            if (columns.contains(column)) {
+                                continue;
                             }
+                            columns.add(column);
                         }
                     }
-                    table.setColumns(columns);
-                    tables.add(table);
-                    tableNames.add(table.getName());
+                } else if (hasText) {
+                    String name1 = grandChildNode.name().toLowerCase();
+                    String text1 = grandChildNode.text();
+
+                    Map.Entry<String, SqlType> column =
+                            new AbstractMap.SimpleEntry<>(name1, detect(text1));
+
+                    if (columns.contains(column)) {
+                        continue;
+                    }
+                    columns.add(column);
                 }
             }
         }
+        return columns;
     }
 
-    private SqlType detect(String v) {
+    SqlType detect(String v) {
         if (isBoolean(v)) return SqlType.BOOLEAN;
         if (isInt(v)) return SqlType.INT;
         if (isLong(v)) return SqlType.BIGINT;
@@ -216,7 +409,9 @@ public class XmlParserService {
     }
 
     /**
-     * Создает sql для создания таблиц динамически из XML
+     * Создает sql для создания таблиц динамически из XML.
+     * Для таблиц из myxmlparser.partitioning создаёт секционированную таблицу и её секции
+     * (HASH — все секции сразу, LIST — только DEFAULT, остальные создаёт загрузчик).
      * @param tableName имя таблицы (например: currencies, categories, offers)
      * @return SQL DDL (PostgreSQL)
      */
@@ -230,6 +425,11 @@ public class XmlParserService {
             throw new IllegalArgumentException("Таблица не найдена: " + tableName);
         }
         String t = quoteIdentifier(tableName);
+        ImportProperties.Partitioning partitioning = properties.getPartitioning().get(tableName);
+
+        if (partitioning != null) {
+            return getPartitionedTableDDL(table, partitioning);
+        }
 
         StringBuilder sqlDDLColumns = new StringBuilder();
         for (Map.Entry<String, SqlType> column : table.getColumns()) {
@@ -237,24 +437,67 @@ public class XmlParserService {
             if (column.getKey().equals("id"))
                 sqlDDLColumns.append("id " + column.getValue().getSql() + " PRIMARY KEY,\n");
             else
-                sqlDDLColumns.append(String.format("%s %s, \n", column.getKey(), column.getValue().getSql()));
+                sqlDDLColumns.append(String.format("%s %s, \n", quoteIdentifier(column.getKey()), column.getValue().getSql()));
         }
 
-        String tmp = """
+        String ddl = """
                CREATE TABLE IF NOT EXISTS %s (
                    %s
                    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
                );
                """.formatted(t, sqlDDLColumns);
 
-        System.out.println(tmp);
+        log.debug(ddl);
+
+        return ddl;
+    }
+
+    private String getPartitionedTableDDL(Table table, ImportProperties.Partitioning partitioning) {
+        String tableName = table.getName();
+        String t = quoteIdentifier(tableName);
+        String partitionColumn = partitioning.getColumn();
+
+        boolean known = table.getColumns().stream().anyMatch(c -> c.getKey().equals(partitionColumn));
+        if (!known) {
+            throw new IllegalArgumentException("Колонка секционирования " + partitionColumn + " отсутствует в таблице: " + tableName);
+        }
+
+        // ключ секционирования обязан входить в первичный ключ
+        String primaryKey = partitionColumn.equals("id")
+                ? "id"
+                : "id, " + quoteIdentifier(partitionColumn);
+
+        StringBuilder sqlDDLColumns = new StringBuilder();
+        for (Map.Entry<String, SqlType> column : table.getColumns()) {
+            if (column.getKey().equals("id") || column.getKey().equals(partitionColumn))
+                sqlDDLColumns.append(String.format("%s %s NOT NULL, \n", quoteIdentifier(column.getKey()), column.getValue().getSql()));
+            else
+                sqlDDLColumns.append(String.format("%s %s, \n", quoteIdentifier(column.getKey()), column.getValue().getSql()));
+        }
 
-        return """
+        StringBuilder ddl = new StringBuilder("""
                CREATE TABLE IF NOT EXISTS %s (
                    %s
-                   created_at TIMESTAMPTZ NOT NULL DEFAULT now()
-               );
-               """.formatted(t, sqlDDLColumns);
+                   created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                   PRIMARY KEY (%s)
+               ) PARTITION BY %s (%s);
+               """.formatted(t, sqlDDLColumns, primaryKey, partitioning.getStrategy().name(), quoteIdentifier(partitionColumn)));
+
+        switch (partitioning.getStrategy()) {
+            case HASH -> {
+                int modulus = Math.max(1, partitioning.getPartitions());
+                for (int i = 0; i < modulus; i++) {
+                    ddl.append("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES WITH (MODULUS %d, REMAINDER %d);\n"
+                            .formatted(quoteIdentifier(PartitionNames.hashPartition(tableName, i)), t, modulus, i));
+                }
+            }
+            case LIST -> ddl.append("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s DEFAULT;\n"
+                    .formatted(quoteIdentifier(PartitionNames.defaultPartition(tableName)), t));
+        }
+
+        log.debug(ddl.toString());
+
+        return ddl.toString();
     }
 
     private String quoteIdentifier(String identifier) {
@@ -264,6 +507,7 @@ public class XmlParserService {
     /**
      * Возвращает строки для tableName для обновления из последнего XML.
      * Обновление потом по ключу "id".
+     * Каждый вызов возвращает новые строки: их можно менять, не затрагивая следующие вызовы.
      */
     public List<Map<String, Object>> getTableRows(String tableName) {
         if (tableName == null || tableName.isBlank()) {
@@ -273,16 +517,45 @@ public class XmlParserService {
             throw new IllegalStateException("XML еще не распарсен: вызовите parseXML(document) перед getTableRows()");
         }
 
-        Object shopObj = lastDocument.getProperty("shop");
-        if (!(shopObj instanceof GPathResult shop)) {
-            return List.of();
+        List<Map<String, Object>> rows;
+        RowBatchExtractedEvent event = new RowBatchExtractedEvent();
+        event.begin();
+
+        if (presplit != null && presplit.document() == lastDocument && tableName.equals(presplit.table())) {
+            // строки части разобраны один раз и хранятся в presplit, поэтому отдаются копии
+            rows = new ArrayList<>(presplit.rows().size());
+            for (Map<String, Object> row : presplit.rows()) {
+                rows.add(new LinkedHashMap<>(row));
+            }
+        } else {
+            Object shopObj = lastDocument.getProperty("shop");
+            if (!(shopObj instanceof GPathResult shop)) {
+                return List.of();
+            }
+
+            Object tableNodeObj = shop.getProperty(tableName);
+            if (!(tableNodeObj instanceof GPathResult tableNode)) {
+                return List.of();
+            }
+
+            rows = extractRows(tableNode);
         }
 
-        Object tableNodeObj = shop.getProperty(tableName);
-        if (!(tableNodeObj instanceof GPathResult tableNode)) {
-            return List.of();
+        metrics.rowsExtracted(tableName, rows.size());
+
+        if (event.shouldCommit()) {
+            event.setTable(tableName);
+            event.setRows(rows.size());
+            event.commit();
         }
 
+        return rows;
+    }
+
+    /**
+     * Строки таблицы: атрибуты строки, дочерние элементы (param нумеруются по порядку) или текст.
+     */
+    private List<Map<String, Object>> extractRows(GPathResult tableNode) {
         List<Map<String, Object>> rows = new ArrayList<>();
 
         for (Object rowObj : tableNode.children()) {
@@ -305,7 +578,7 @@ public class XmlParserService {
                 for (Object chObj : rowNode.children()) {
                     if (!(chObj instanceof GPathResult ch)) continue;
 
-                    String colName = ch.name();
+                    String colName = ch.name().toLowerCase();
                     if ("param".equals(colName)) {
                         colName = "param_" + paramIndex++;
                     }
@@ -321,7 +594,7 @@ public class XmlParserService {
                     row.put(colName, value);
                 }
             } else if (hasText) {
-                String colName = rowNode.name();
+                String colName = rowNode.name().toLowerCase();
                 String value = rowNode.text().trim();
                 row.put(colName, value);
             }
@@ -344,6 +617,21 @@ public class XmlParserService {
                 .orElseThrow(() -> new IllegalArgumentException("Таблица не найдена: " + tableName));
     }
 
+    /**
+     * Сколько частей параллельно разобрал последний readFromFile; 0 — файл прочитан последовательно.
+     */
+    int lastChunkCount() {
+        return presplit == null ? 0 : presplit.chunks();
+    }
+
+    /**
+     * Таблица, разобранная по частям при параллельном чтении: колонки и строки уже готовы,
+     * а в документе-скелете она пустая.
+     */
+    private record Presplit(GPathResult document, String table, List<Map.Entry<String, SqlType>> columns,
+                            int scanned, List<Map<String, Object>> rows, int chunks) {
+    }
+
     private XmlSlurper slurper() throws Exception {
 
         XmlSlurper slurper = new XmlSlurper(false, true);
@@ -356,4 +644,58 @@ public class XmlParserService {
 
         return slurper;
     }
+
+    /**
+     * Считает прочитанные байты (метрика xml.bytes.read) и их CRC32C (отпечаток фида).
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final CRC32C checksum = new CRC32C();
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+                checksum.update(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                checksum.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // пропущенные байты должны попасть в отпечаток, поэтому читаем их
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (r < 0) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getChecksum() {
+            return checksum.getValue();
+        }
+    }
 }
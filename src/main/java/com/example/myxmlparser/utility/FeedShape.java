@@ -0,0 +1,44 @@
+package com.example.myxmlparser.utility;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Размер и форма синтетического YML-фида для {@link YmlFeedGenerator}.
+ */
+@Getter
+@Builder
+public class FeedShape {
+
+    /** Количество offer в shop/offers. */
+    @Builder.Default
+    private final int offers = 10_000;
+
+    /** Количество category; parentId указывает на одну из предыдущих категорий. */
+    @Builder.Default
+    private final int categories = 500;
+
+    /** Количество currency (не больше числа известных кодов валют). */
+    @Builder.Default
+    private final int currencies = 3;
+
+    /** Минимальное число param у offer. */
+    @Builder.Default
+    private final int minParams = 0;
+
+    /** Максимальное число param у offer. */
+    @Builder.Default
+    private final int maxParams = 8;
+
+    /** Доля offer с вложенным полем delivery-options. */
+    @Builder.Default
+    private final double nestedFieldRate = 0.3;
+
+    /** Длина description в символах. */
+    @Builder.Default
+    private final int descriptionLength = 200;
+
+    /** Seed генератора: одинаковый seed и форма дают одинаковый фид. */
+    @Builder.Default
+    private final long seed = 42L;
+}
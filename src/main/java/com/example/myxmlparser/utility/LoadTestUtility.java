@@ -0,0 +1,177 @@
+package com.example.myxmlparser.utility;
+
+import com.example.myxmlparser.domain.Table;
+import com.example.myxmlparser.service.DbUpdateService;
+import com.example.myxmlparser.service.XmlParserService;
+import groovy.xml.slurpersupport.GPathResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Сквозной нагрузочный прогон в стиле {@link TestExerciseUtility#doExercise}:
+ * генерирует фид (или берёт готовый файл), читает и разбирает его, создаёт таблицы и загружает строки в БД.
+ * Печатает время по стадиям, rows/sec и пик занятого heap (по выборкам раз в {@value #HEAP_SAMPLE_MILLIS} мс).
+ * Если колонка, пришедшая из фида, не попадает в таблицу, прогон падает — иначе rows/sec меряется на урезанных строках.
+ * Таблицы из фида перед прогоном удаляются — запускать только на локальной БД.
+ */
+@Slf4j
+public class LoadTestUtility {
+
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+
+    public static void run(XmlParserService xmlParserService, DbUpdateService dbUpdateService, FeedShape shape) throws Exception {
+        Path feed = Files.createTempFile("myxmlparser-load-", ".xml");
+        try {
+            Map<String, Long> stages = new LinkedHashMap<>();
+
+            long start = System.nanoTime();
+            YmlFeedGenerator.generate(shape, feed);
+            stages.put("generate", System.nanoTime() - start);
+
+            run(xmlParserService, dbUpdateService, feed, stages);
+        } finally {
+            Files.deleteIfExists(feed);
+        }
+    }
+
+    public static void run(XmlParserService xmlParserService, DbUpdateService dbUpdateService, Path feed) {
+        run(xmlParserService, dbUpdateService, feed, new LinkedHashMap<>());
+    }
+
+    private static void run(XmlParserService xmlParserService, DbUpdateService dbUpdateService, Path feed, Map<String, Long> stages) {
+        try (HeapSampler heap = new HeapSampler()) {
+            run(xmlParserService, dbUpdateService, feed, stages, heap);
+        }
+    }
+
+    private static void run(XmlParserService xmlParserService, DbUpdateService dbUpdateService, Path feed,
+                            Map<String, Long> stages, HeapSampler heap) {
+        long start = System.nanoTime();
+        GPathResult doc = xmlParserService.readFromFile(feed);
+        stages.put("read", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        xmlParserService.parseXML(doc);
+        stages.put("parse", System.nanoTime() - start);
+
+        List<String> tableNames = xmlParserService.getTableNames();
+
+        // строки извлекаются один раз и передаются в update, поэтому extract и update не пересекаются по времени
+        start = System.nanoTime();
+        long rows = 0;
+        Map<String, List<Map<String, Object>>> extracted = new LinkedHashMap<>();
+        for (String tableName : tableNames) {
+            List<Map<String, Object>> tableRows = xmlParserService.getTableRows(tableName);
+            extracted.put(tableName, tableRows);
+            rows += tableRows.size();
+        }
+        stages.put("extract", System.nanoTime() - start);
+
+        Map<String, Set<String>> dropped = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Map<String, Object>>> table : extracted.entrySet()) {
+            Set<String> missing = droppedColumns(xmlParserService.getTableDefinition(table.getKey()), table.getValue());
+            if (!missing.isEmpty()) {
+                dropped.put(table.getKey(), missing);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            throw new IllegalStateException("Колонки из фида не попадут в БД: " + dropped);
+        }
+
+        start = System.nanoTime();
+        dbUpdateService.dropTables(tableNames, false);
+        dbUpdateService.create();
+        stages.put("create", System.nanoTime() - start);
+
+        long updateNanos = 0;
+        for (String tableName : tableNames) {
+            start = System.nanoTime();
+            dbUpdateService.update(tableName, extracted.remove(tableName));
+            long elapsed = System.nanoTime() - start;
+            stages.put("update " + tableName, elapsed);
+            updateNanos += elapsed;
+        }
+
+        long totalNanos = stages.values().stream().mapToLong(Long::longValue).sum();
+
+        StringBuilder report = new StringBuilder("\nНагрузочный прогон: ").append(feed).append('\n');
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            report.append(String.format("  %-20s %10d ms%n", stage.getKey(), stage.getValue() / 1_000_000));
+        }
+        report.append(String.format("  %-20s %10d ms%n", "total", totalNanos / 1_000_000));
+        report.append(String.format("  %-20s %10d%n", "rows", rows));
+        report.append(String.format("  %-20s %10.0f%n", "rows/sec (update)", perSecond(rows, updateNanos)));
+        report.append(String.format("  %-20s %10.0f%n", "rows/sec (total)", perSecond(rows, totalNanos)));
+        report.append(String.format("  %-20s %10d MB%n", "peak heap (sampled)", heap.peakBytes() / (1024 * 1024)));
+
+        log.info(report.toString());
+    }
+
+    private static double perSecond(long rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1_000_000_000d / nanos;
+    }
+
+    private static Set<String> droppedColumns(Table table, List<Map<String, Object>> rows) {
+        Set<String> columns = table.getColumns().stream()
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+
+        Set<String> missing = new TreeSet<>();
+        for (Map<String, Object> row : rows) {
+            for (String key : row.keySet()) {
+                if (!columns.contains(key)) {
+                    missing.add(key);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Пик занятого heap за время прогона. Пики отдельных пулов ({@code MemoryPoolMXBean#getPeakUsage})
+     * достигаются в разные моменты, и их сумма завышает реальный пик, поэтому общий heap опрашивается по таймеру.
+     */
+    private static final class HeapSampler implements AutoCloseable {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loadtest-heap-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        HeapSampler() {
+            sample();
+            timer.scheduleAtFixedRate(this::sample, HEAP_SAMPLE_MILLIS, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        long peakBytes() {
+            sample();
+            return peak.get();
+        }
+
+        @Override
+        public void close() {
+            timer.shutdownNow();
+        }
+    }
+}
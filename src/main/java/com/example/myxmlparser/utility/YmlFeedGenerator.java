@@ -0,0 +1,143 @@
+package com.example.myxmlparser.utility;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Потоковый генератор синтетических YML-фидов (shop/currencies, categories, offers).
+ * Фид пишется элемент за элементом через StAX и не собирается в памяти,
+ * поэтому размер ограничен только диском.
+ */
+public final class YmlFeedGenerator {
+
+    private static final String[] CURRENCIES = {"RUR", "USD", "EUR", "KZT", "BYN", "UAH"};
+    private static final String[] PARAM_NAMES = {"Цвет", "Размер", "Материал", "Вес", "Страна", "Гарантия", "Модель", "Сезон"};
+    private static final String[] WORDS = {"товар", "новый", "быстрый", "прочный", "лёгкий", "яркий", "удобный", "классический"};
+
+    private YmlFeedGenerator() {
+    }
+
+    public static void generate(FeedShape shape, Path target) {
+        if (target == null) throw new IllegalArgumentException("target не должен быть null");
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 16)) {
+            generate(shape, out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось записать фид: " + target, e);
+        }
+    }
+
+    public static void generate(FeedShape shape, OutputStream out) {
+        if (shape == null) throw new IllegalArgumentException("shape не должен быть null");
+        if (out == null) throw new IllegalArgumentException("out не должен быть null");
+        if (shape.getCategories() < 1) throw new IllegalArgumentException("categories должно быть больше 0");
+        if (shape.getMinParams() > shape.getMaxParams()) throw new IllegalArgumentException("minParams больше maxParams");
+
+        SplittableRandom random = new SplittableRandom(shape.getSeed());
+        int currencies = Math.max(1, Math.min(shape.getCurrencies(), CURRENCIES.length));
+
+        try {
+            XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+            w.writeStartDocument("UTF-8", "1.0");
+            w.writeCharacters("\n");
+            w.writeStartElement("yml_catalog");
+            w.writeAttribute("date", "2024-01-31T12:00:00");
+            w.writeStartElement("shop");
+
+            w.writeStartElement("currencies");
+            for (int i = 0; i < currencies; i++) {
+                w.writeEmptyElement("currency");
+                w.writeAttribute("id", CURRENCIES[i]);
+                w.writeAttribute("rate", i == 0 ? "1.00" : (10 + random.nextInt(100)) + "." + random.nextInt(10, 100));
+            }
+            w.writeEndElement();
+
+            w.writeStartElement("categories");
+            for (int i = 1; i <= shape.getCategories(); i++) {
+                w.writeStartElement("category");
+                w.writeAttribute("id", Integer.toString(i));
+                if (i > 1) {
+                    w.writeAttribute("parentId", Integer.toString(1 + random.nextInt(i - 1)));
+                }
+                w.writeCharacters("Категория " + i);
+                w.writeEndElement();
+            }
+            w.writeEndElement();
+
+            w.writeStartElement("offers");
+            for (int i = 1; i <= shape.getOffers(); i++) {
+                writeOffer(w, shape, random, i, currencies);
+            }
+            w.writeEndElement();
+
+            w.writeEndElement(); // shop
+            w.writeEndElement(); // yml_catalog
+            w.writeEndDocument();
+            w.flush();
+            w.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Не удалось сгенерировать фид", e);
+        }
+    }
+
+    private static void writeOffer(XMLStreamWriter w, FeedShape shape, SplittableRandom random, int id, int currencies)
+            throws XMLStreamException {
+        w.writeStartElement("offer");
+        w.writeAttribute("id", Integer.toString(id));
+        w.writeAttribute("available", Boolean.toString(random.nextInt(10) != 0));
+
+        element(w, "url", "https://shop.example.com/offer/" + id);
+        element(w, "price", random.nextInt(100, 1_000_000) + "." + random.nextInt(10, 100));
+        element(w, "currencyId", CURRENCIES[random.nextInt(currencies)]);
+        element(w, "categoryId", Integer.toString(1 + random.nextInt(shape.getCategories())));
+        element(w, "name", "Предложение " + id);
+        element(w, "vendor", "Vendor " + random.nextInt(1_000));
+        element(w, "description", text(random, shape.getDescriptionLength()));
+
+        if (random.nextDouble() < shape.getNestedFieldRate()) {
+            w.writeStartElement("delivery-options");
+            int options = 1 + random.nextInt(3);
+            for (int o = 0; o < options; o++) {
+                w.writeEmptyElement("option");
+                w.writeAttribute("cost", Integer.toString(random.nextInt(1_000)));
+                w.writeAttribute("days", Integer.toString(1 + random.nextInt(7)));
+            }
+            w.writeEndElement();
+        }
+
+        int params = shape.getMinParams() + random.nextInt(shape.getMaxParams() - shape.getMinParams() + 1);
+        for (int p = 0; p < params; p++) {
+            w.writeStartElement("param");
+            w.writeAttribute("name", PARAM_NAMES[p % PARAM_NAMES.length]);
+            w.writeCharacters(WORDS[random.nextInt(WORDS.length)]);
+            w.writeEndElement();
+        }
+
+        w.writeEndElement();
+        w.writeCharacters("\n");
+    }
+
+    private static void element(XMLStreamWriter w, String name, String text) throws XMLStreamException {
+        w.writeStartElement(name);
+        w.writeCharacters(text);
+        w.writeEndElement();
+    }
+
+    private static String text(SplittableRandom random, int length) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
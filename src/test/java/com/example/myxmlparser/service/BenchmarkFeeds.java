@@ -0,0 +1,29 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.utility.FeedShape;
+import com.example.myxmlparser.utility.YmlFeedGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Генерирует YML-фиды заданного размера для бенчмарков.
+ */
+final class BenchmarkFeeds {
+
+    private BenchmarkFeeds() {
+    }
+
+    /**
+     * Пишет во временный файл фид с указанным числом offer и возвращает путь к нему.
+     */
+    static Path write(int offers) throws IOException {
+        Path feed = Files.createTempFile("myxmlparser-bench-" + offers + "-", ".xml");
+        feed.toFile().deleteOnExit();
+
+        YmlFeedGenerator.generate(FeedShape.builder().offers(offers).build(), feed);
+
+        return feed;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.domain.SqlType;
+import com.example.myxmlparser.service.CategoryHierarchyService.Edge;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CategoryHierarchyServiceTests {
+
+    private final CategoryHierarchyService service = new CategoryHierarchyService(null, null, new ImportProperties());
+
+    @Test
+    void chain() {
+        Map<Object, Object> parents = new LinkedHashMap<>();
+        parents.put(1, null);
+        parents.put(2, 1);
+        parents.put(3, 2);
+
+        assertEquals(Set.of(
+                new Edge(1, 1, 0),
+                new Edge(2, 2, 0), new Edge(1, 2, 1),
+                new Edge(3, 3, 0), new Edge(2, 3, 1), new Edge(1, 3, 2)
+        ), service.closure(parents));
+    }
+
+    @Test
+    void forest() {
+        Map<Object, Object> parents = new LinkedHashMap<>();
+        parents.put(1, null);
+        parents.put(2, 1);
+        parents.put(10, null);
+        parents.put(11, 10);
+
+        assertEquals(Set.of(
+                new Edge(1, 1, 0), new Edge(2, 2, 0), new Edge(1, 2, 1),
+                new Edge(10, 10, 0), new Edge(11, 11, 0), new Edge(10, 11, 1)
+        ), service.closure(parents));
+    }
+
+    @Test
+    void missingParentStopsWalk() {
+        Map<Object, Object> parents = new LinkedHashMap<>();
+        parents.put(2, 99);
+        parents.put(3, 2);
+
+        assertEquals(Set.of(
+                new Edge(2, 2, 0),
+                new Edge(3, 3, 0), new Edge(2, 3, 1)
+        ), service.closure(parents));
+    }
+
+    @Test
+    void cycleStopsWalk() {
+        Map<Object, Object> parents = new HashMap<>();
+        parents.put(1, 2);
+        parents.put(2, 1);
+        parents.put(3, 3);
+
+        assertEquals(Set.of(
+                new Edge(1, 1, 0), new Edge(2, 1, 1),
+                new Edge(2, 2, 0), new Edge(1, 2, 1),
+                new Edge(3, 3, 0)
+        ), service.closure(parents));
+    }
+
+    @Test
+    void rebuildWritesOnlyDifference() {
+        // было: 3 под 1; стало: 3 под 2
+        ClosureJdbcTemplate jdbcTemplate = new ClosureJdbcTemplate(true, Set.of(
+                new Edge(1, 1, 0), new Edge(2, 2, 0), new Edge(1, 2, 1),
+                new Edge(3, 3, 0), new Edge(1, 3, 1)
+        ));
+        Map<Object, Object> parents = new LinkedHashMap<>();
+        parents.put(1, null);
+        parents.put(2, 1);
+        parents.put(3, 2);
+
+        hierarchy(jdbcTemplate).rebuild(SqlType.INT, parents, true);
+
+        assertEquals(Set.of(List.of(1, 3)), jdbcTemplate.args("DELETE"));
+        assertEquals(Set.of(List.of(2, 3, 1), List.of(1, 3, 2)), jdbcTemplate.args("INSERT"));
+    }
+
+    @Test
+    void rebuildIsSkippedWhenCategoriesNotChanged() {
+        ClosureJdbcTemplate jdbcTemplate = new ClosureJdbcTemplate(true, Set.of(new Edge(1, 1, 0)));
+
+        hierarchy(jdbcTemplate).rebuild(SqlType.INT, Map.of(1, 2), false);
+
+        assertEquals(0, jdbcTemplate.reads);
+        assertTrue(jdbcTemplate.batches.isEmpty());
+    }
+
+    @Test
+    void missingClosureTableIsBuiltEvenWithoutChanges() {
+        ClosureJdbcTemplate jdbcTemplate = new ClosureJdbcTemplate(false, Set.of());
+        Map<Object, Object> parents = new LinkedHashMap<>();
+        parents.put(1, null);
+        parents.put(2, 1);
+
+        hierarchy(jdbcTemplate).rebuild(SqlType.INT, parents, false);
+
+        assertEquals(Set.of(List.of(1, 1, 0), List.of(2, 2, 0), List.of(1, 2, 1)), jdbcTemplate.args("INSERT"));
+    }
+
+    private CategoryHierarchyService hierarchy(JdbcTemplate jdbcTemplate) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                return action.doInTransaction(null);
+            }
+        };
+        return new CategoryHierarchyService(jdbcTemplate, transactionTemplate, new ImportProperties());
+    }
+
+    /**
+     * JdbcTemplate без БД: closure-таблица задана набором связей, DELETE/INSERT только запоминаются.
+     */
+    private static final class ClosureJdbcTemplate extends JdbcTemplate {
+
+        private final boolean exists;
+        private final Set<Edge> edges;
+        final List<Map.Entry<String, List<Object[]>>> batches = new ArrayList<>();
+        int reads;
+
+        ClosureJdbcTemplate(boolean exists, Set<Edge> edges) {
+            this.exists = exists;
+            this.edges = edges;
+        }
+
+        @Override
+        public void execute(String sql) {
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            return (T) Boolean.valueOf(exists);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper) {
+            reads++;
+            return (List<T>) new ArrayList<>(edges);
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            batches.add(Map.entry(sql, List.copyOf(batchArgs)));
+            return new int[batchArgs.size()];
+        }
+
+        Set<List<Object>> args(String statement) {
+            Set<List<Object>> args = new HashSet<>();
+            for (Map.Entry<String, List<Object[]>> batch : batches) {
+                if (batch.getKey().startsWith(statement)) {
+                    batch.getValue().forEach(row -> args.add(List.of(row)));
+                }
+            }
+            return args;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.domain.SqlType;
+import com.example.myxmlparser.metrics.IngestionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки стадий записи без БД: приведение типов и генерация UPSERT SQL из update.
+ * Каждая операция — полный проход по строкам offers из фида.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DbUpdateServiceBenchmark {
+
+    private static final String TABLE = "offers";
+
+    @Param({"10000", "100000", "1000000"})
+    public int offers;
+
+    private DbUpdateService dbUpdateService;
+    private List<Map<String, Object>> rows;
+    private Map<String, SqlType> columnTypes;
+    private Set<String> allowedCols;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        IngestionMetrics metrics = new IngestionMetrics(new SimpleMeterRegistry());
+        ImportProperties properties = new ImportProperties();
+
+        Path feed = BenchmarkFeeds.write(offers);
+
+        XmlParserService parser = new XmlParserService(metrics, properties);
+        parser.parseXML(parser.readFromFile(feed));
+
+        // JdbcTemplate и DataSource не нужны: бенчмарк не ходит в БД
+        dbUpdateService = new DbUpdateService(parser, null, null, metrics, properties,
+                new QuarantineService(null, metrics, properties), null, null);
+        rows = parser.getTableRows(TABLE);
+
+        columnTypes = new LinkedHashMap<>();
+        allowedCols = new LinkedHashSet<>();
+        for (Map.Entry<String, SqlType> column : parser.getTableDefinition(TABLE).getColumns()) {
+            columnTypes.putIfAbsent(column.getKey(), column.getValue());
+            allowedCols.add(column.getKey());
+        }
+    }
+
+    @Benchmark
+    public void coerceValue(Blackhole bh) {
+        for (Map<String, Object> row : rows) {
+            for (Map.Entry<String, Object> e : row.entrySet()) {
+                SqlType type = columnTypes.get(e.getKey());
+                try {
+                    bh.consume(dbUpdateService.coerceValue(TABLE, e.getKey(), type, e.getValue()));
+                } catch (IllegalArgumentException ex) {
+                    bh.consume(ex);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void upsertSql(Blackhole bh) {
+        for (Map<String, Object> row : rows) {
+            bh.consume(dbUpdateService.prepareUpsert(TABLE, columnTypes, allowedCols, row));
+        }
+    }
+}
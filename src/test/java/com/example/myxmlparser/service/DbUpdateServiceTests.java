@@ -0,0 +1,287 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.domain.SqlType;
+import com.example.myxmlparser.metrics.IngestionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DbUpdateServiceTests {
+
+    private static final String TABLE = "offers";
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final ImportProperties properties = new ImportProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Map<String, SqlType> columnTypes = Map.of(
+            "id", SqlType.INT,
+            "name", SqlType.VARCHAR,
+            "price", SqlType.DECIMAL
+    );
+    private final Set<String> allowedCols = columnTypes.keySet();
+
+    @Test
+    void repeatedIdWithOtherColumnsIsWrittenLast() {
+        List<Map<String, Object>> rows = List.of(
+                row("2", "other", null),
+                row("1", "first", "10"),
+                row("1", "last", null)
+        );
+
+        service().write(TABLE, rows, columnTypes, allowedCols);
+
+        Object[] lastForId = writtenRows(TABLE).stream()
+                .filter(args -> Integer.valueOf(1).equals(args[0]))
+                .reduce((a, b) -> b)
+                .orElseThrow();
+        assertEquals("last", lastForId[1]);
+    }
+
+    @Test
+    void countsInsertedUpdatedAndSkippedRows() {
+        DbUpdateService service = service();
+        service.write(TABLE, List.of(row("1", "kettle", "10"), row("2", "toaster", "20")), columnTypes, allowedCols);
+        // 2 меняется, 3 новая, 1 без изменений
+        service.write(TABLE, List.of(row("2", "toaster v2", "20"), row("3", "mixer", "30"), row("1", "kettle", "10")),
+                columnTypes, allowedCols);
+
+        assertEquals(3, rowsCounter(IngestionMetrics.OUTCOME_INSERTED));
+        assertEquals(1, rowsCounter(IngestionMetrics.OUTCOME_UPDATED));
+        assertEquals(1, rowsCounter(IngestionMetrics.OUTCOME_SKIPPED));
+        assertTrue(jdbcTemplate.statements.stream().allMatch(sql -> sql.endsWith("RETURNING (xmax = 0) AS inserted")));
+    }
+
+    @Test
+    void strictModeRejectsBadValueWithOriginalMessage() {
+        List<Map<String, Object>> rows = List.of(row("1", "ok", "10"), row("2", "bad", "abc"));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> service().write(TABLE, rows, columnTypes, allowedCols));
+
+        assertTrue(ex.getMessage().startsWith("Не удалось преобразовать значение для offers.price к типу decimal: raw=abc"),
+                ex.getMessage());
+        assertTrue(writtenRows(properties.getQuarantine().getTable()).isEmpty());
+        // как при построчной записи: строка до отклонённой остаётся в БД
+        assertEquals(1, writtenRows(TABLE).size());
+    }
+
+    @Test
+    void strictModeRejectsMissingIdWithOriginalMessage() {
+        List<Map<String, Object>> rows = List.of(row(null, "no id", "10"));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> service().write(TABLE, rows, columnTypes, allowedCols));
+
+        assertEquals("В XML нет обязательного атрибута id для таблицы: offers", ex.getMessage());
+    }
+
+    @Test
+    void lenientModeDoesNotAbortBelowMinRows() {
+        lenient(1_000, 0.5);
+        // первые строки плохие: доля 100%, но min-rows ещё не набран
+        List<Map<String, Object>> rows = rows(10, 0, 1);
+
+        service().write(TABLE, rows, columnTypes, allowedCols);
+
+        assertEquals(2, writtenRows(properties.getQuarantine().getTable()).size());
+        assertEquals(8, writtenRows(TABLE).size());
+    }
+
+    @Test
+    void lenientModeAbortsOnceMinRowsReachedAboveRate() {
+        lenient(5, 0.1);
+        List<Map<String, Object>> rows = rows(20, 2, 3, 4);
+
+        ImportAbortedException ex = assertThrows(ImportAbortedException.class,
+                () -> service().write(TABLE, rows, columnTypes, allowedCols));
+
+        assertTrue(ex.getMessage().contains("отклонено 3 из 5"), ex.getMessage());
+        assertEquals(3, writtenRows(properties.getQuarantine().getTable()).size());
+        // хорошие строки до остановки дописаны, после неё — не читаются
+        assertEquals(2, writtenRows(TABLE).size());
+    }
+
+    @Test
+    void lenientModeChecksRateAtEndOfTable() {
+        lenient(1_000, 0.1);
+        List<Map<String, Object>> rows = rows(5, 3, 4);
+
+        ImportAbortedException ex = assertThrows(ImportAbortedException.class,
+                () -> service().write(TABLE, rows, columnTypes, allowedCols));
+
+        assertTrue(ex.getMessage().contains("отклонено 2 из 5"), ex.getMessage());
+        assertEquals(2, writtenRows(properties.getQuarantine().getTable()).size());
+        assertEquals(3, writtenRows(TABLE).size());
+    }
+
+    @Test
+    void rejectedRowKeepsRawValueInQuarantine() {
+        lenient(1_000, 1.0);
+
+        service().write(TABLE, rows(3, 1), columnTypes, allowedCols);
+
+        Object[] rejected = writtenRows(properties.getQuarantine().getTable()).getFirst();
+        assertEquals(TABLE, rejected[0]);
+        assertEquals("2", rejected[1]);
+        assertEquals("price", rejected[2]);
+        assertEquals("abc", rejected[3]);
+        assertInstanceOf(String.class, rejected[4]);
+    }
+
+    @Test
+    void quarantineTableIsRecreatedAfterDrop() {
+        lenient(1_000, 1.0);
+        DbUpdateService service = service();
+
+        service.write(TABLE, rows(2, 1), columnTypes, allowedCols);
+        service.dropTables(List.of(properties.getQuarantine().getTable()), false);
+        service.write(TABLE, rows(2, 1), columnTypes, allowedCols);
+
+        long creates = jdbcTemplate.statements.stream()
+                .filter(sql -> sql.contains("CREATE TABLE IF NOT EXISTS \"" + properties.getQuarantine().getTable() + "\""))
+                .count();
+        assertEquals(2, creates);
+    }
+
+    @Test
+    void listPartitionsAreCreatedBeforeRowsAreWritten() {
+        ImportProperties.Partitioning partitioning = new ImportProperties.Partitioning();
+        partitioning.setStrategy(ImportProperties.Partitioning.Strategy.LIST);
+        partitioning.setColumn("name");
+        properties.getPartitioning().put(TABLE, partitioning);
+        properties.setWriteThreads(2);
+
+        List<Map<String, Object>> rows = List.of(
+                row("1", "a", "10"), row("2", "b", "10"), row("3", "a", "10"), row("4", "c", "10"));
+        service().write(TABLE, rows, columnTypes, allowedCols);
+
+        List<String> statements = List.copyOf(jdbcTemplate.statements);
+        long partitions = statements.stream().filter(sql -> sql.contains(" PARTITION OF ")).count();
+        int firstInsert = 0;
+        while (!statements.get(firstInsert).startsWith("INSERT INTO \"" + TABLE + "\"")) {
+            firstInsert++;
+        }
+        assertEquals(3, partitions);
+        assertEquals(3, statements.subList(0, firstInsert).stream().filter(sql -> sql.contains(" PARTITION OF ")).count());
+        assertEquals(4, writtenRows(TABLE).size());
+    }
+
+    private void lenient(int minRows, double maxErrorRate) {
+        properties.getQuarantine().setEnabled(true);
+        properties.getQuarantine().setMinRows(minRows);
+        properties.getQuarantine().setMaxErrorRate(maxErrorRate);
+    }
+
+    /**
+     * @param bad индексы строк с неприводимой ценой
+     */
+    private List<Map<String, Object>> rows(int count, int... bad) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            boolean isBad = Arrays.stream(bad).anyMatch(b -> b == index);
+            rows.add(row(String.valueOf(i + 1), "offer " + (i + 1), isBad ? "abc" : "10"));
+        }
+        return rows;
+    }
+
+    private double rowsCounter(String outcome) {
+        return registry.counter("myxmlparser.db.rows", "table", TABLE, "outcome", outcome).count();
+    }
+
+    private List<Object[]> writtenRows(String table) {
+        String prefix = "INSERT INTO \"" + table + "\"";
+        List<Object[]> written = new ArrayList<>();
+        for (Map.Entry<String, List<Object[]>> batch : jdbcTemplate.batches) {
+            if (batch.getKey().startsWith(prefix)) {
+                written.addAll(batch.getValue());
+            }
+        }
+        return written;
+    }
+
+    private Map<String, Object> row(String id, String name, String price) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        if (price != null) {
+            row.put("price", price);
+        }
+        return row;
+    }
+
+    private DbUpdateService service() {
+        IngestionMetrics metrics = new IngestionMetrics(registry);
+        return new DbUpdateService(null, jdbcTemplate, null, metrics, properties,
+                new QuarantineService(jdbcTemplate, metrics, properties),
+                new CategoryHierarchyService(jdbcTemplate, null, properties),
+                new ImportCoordinator(null, jdbcTemplate, properties));
+    }
+
+    /**
+     * JdbcTemplate без БД: запоминает строки каждого INSERT и отвечает на RETURNING (xmax = 0) так,
+     * как ответил бы PostgreSQL на UPSERT с IS DISTINCT FROM: true для нового id, false для изменённой
+     * строки, а неизменённая строка в результат не попадает.
+     */
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+
+        // копии строк: QuarantineService очищает свой буфер сразу после batchUpdate
+        final List<Map.Entry<String, List<Object[]>>> batches = new ArrayList<>();
+        final List<String> statements = new ArrayList<>();
+        private final Map<Object, Object[]> stored = new HashMap<>();
+
+        @Override
+        public synchronized void execute(String sql) {
+            statements.add(sql);
+        }
+
+        @Override
+        public synchronized int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            statements.add(sql);
+            batches.add(Map.entry(sql, List.copyOf(batchArgs)));
+            int[] counts = new int[batchArgs.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            statements.add(sql);
+
+            int values = sql.indexOf(" VALUES (") + " VALUES (".length();
+            int width = (int) sql.substring(values, sql.indexOf(')', values)).chars().filter(c -> c == '?').count();
+
+            List<Object[]> rows = new ArrayList<>();
+            List<T> returned = new ArrayList<>();
+            for (int from = 0; from < args.length; from += width) {
+                Object[] row = Arrays.copyOfRange(args, from, from + width);
+                rows.add(row);
+
+                Object[] previous = stored.put(row[0], row);
+                if (previous == null) {
+                    returned.add((T) Boolean.TRUE);
+                } else if (!Arrays.equals(previous, row)) {
+                    returned.add((T) Boolean.FALSE);
+                }
+            }
+            batches.add(Map.entry(sql, rows));
+            return returned;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Две реплики на PostgreSQL из compose.yaml. Без доступной БД тесты пропускаются.
+ */
+class ImportCoordinatorTests {
+
+    private static final String LEASE_TABLE = "import_leases_test";
+    private static final String URL = "jdbc:postgresql://localhost:5432/mydatabase";
+    private static final String USER = "myuser";
+    private static final String PASSWORD = "secret";
+
+    private static DriverManagerDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    // свой фид на тест: строки аренд разных тестов не пересекаются
+    private final String feed = UUID.randomUUID().toString();
+    private final String jobKey = "offers#0/2";
+
+    @BeforeAll
+    static void connect() {
+        dataSource = new DriverManagerDataSource(URL, USER, PASSWORD);
+        try (Connection ignored = dataSource.getConnection()) {
+            jdbcTemplate = new JdbcTemplate(dataSource);
+        } catch (Exception e) {
+            assumeTrue(false, "PostgreSQL из compose.yaml недоступен: " + e.getMessage());
+        }
+    }
+
+    @AfterAll
+    static void dropLeaseTable() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS \"" + LEASE_TABLE + "\"");
+        }
+    }
+
+    @Test
+    void heldShardCannotBeClaimedTwice() {
+        ImportCoordinator a = coordinator("a");
+        ImportCoordinator b = coordinator("b");
+
+        try (ImportCoordinator.Lease lease = a.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+            assertNull(b.tryClaim(feed, jobKey));
+            assertEquals("running", status());
+            assertEquals("a", owner());
+        }
+    }
+
+    @Test
+    void doneShardIsSkippedForSameFeedOnly() {
+        ImportCoordinator a = coordinator("a");
+        ImportCoordinator b = coordinator("b");
+
+        try (ImportCoordinator.Lease lease = a.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+            lease.complete();
+        }
+
+        assertEquals("done", status());
+        assertTrue(b.isDone(feed, jobKey));
+        assertNull(b.tryClaim(feed, jobKey));
+
+        String nextFeed = UUID.randomUUID().toString();
+        assertFalse(b.isDone(nextFeed, jobKey));
+        try (ImportCoordinator.Lease lease = b.tryClaim(nextFeed, jobKey)) {
+            assertNotNull(lease);
+        }
+    }
+
+    @Test
+    void failedShardIsReleased() {
+        ImportCoordinator a = coordinator("a");
+        ImportCoordinator b = coordinator("b");
+
+        try (ImportCoordinator.Lease lease = a.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+            // close() без complete(): запись шарда упала
+        }
+        assertEquals("failed", status());
+        assertFalse(b.isDone(feed, jobKey));
+
+        try (ImportCoordinator.Lease lease = b.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+            assertEquals("b", owner());
+            lease.complete();
+        }
+        assertEquals("done", status());
+    }
+
+    @Test
+    void staleRunningShardIsReclaimed() {
+        ImportCoordinator b = coordinator("b");
+        // реплика упала: строка осталась running, а блокировка снята вместе с соединением
+        assertFalse(b.isDone(feed, jobKey));
+        jdbcTemplate.update("INSERT INTO \"" + LEASE_TABLE + "\" (feed, job_key, owner, status) VALUES (?, ?, 'ghost', 'running')",
+                feed, jobKey);
+
+        try (ImportCoordinator.Lease lease = b.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+            assertEquals("b", owner());
+            assertEquals("running", status());
+        }
+    }
+
+    @Test
+    void forgottenTableIsLoadedAgain() {
+        ImportCoordinator a = coordinator("a");
+
+        try (ImportCoordinator.Lease lease = a.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+            lease.complete();
+        }
+        assertTrue(a.isDone(feed, jobKey));
+
+        // таблицу удалили и создали заново: тот же фид нужно загрузить ещё раз
+        a.forget("offers");
+
+        assertFalse(a.isDone(feed, jobKey));
+        try (ImportCoordinator.Lease lease = a.tryClaim(feed, jobKey)) {
+            assertNotNull(lease);
+        }
+    }
+
+    @Test
+    void lockIsReleasedToPoolWhenLeaseInsertFails() {
+        coordinator("b").isDone(feed, jobKey);
+        jdbcTemplate.execute("ALTER TABLE \"" + LEASE_TABLE + "\" ADD CONSTRAINT broken_owner CHECK (owner <> 'broken') NOT VALID");
+
+        try (HikariDataSource pool = pool()) {
+            ImportCoordinator a = coordinator(pool, "broken");
+            assertThrows(DataAccessException.class, () -> a.tryClaim(feed, jobKey));
+
+            // соединение с блокировкой вернулось бы в пул и держало её дальше
+            try (ImportCoordinator.Lease lease = coordinator("b").tryClaim(feed, jobKey)) {
+                assertNotNull(lease);
+            }
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE \"" + LEASE_TABLE + "\" DROP CONSTRAINT IF EXISTS broken_owner");
+        }
+    }
+
+    @Test
+    void lockIsReleasedToPoolWhenFinishFails() {
+        try (HikariDataSource pool = pool()) {
+            ImportCoordinator a = coordinator(pool, "a");
+            ImportCoordinator.Lease lease = a.tryClaim(feed, jobKey);
+            assertNotNull(lease);
+
+            jdbcTemplate.execute("ALTER TABLE \"" + LEASE_TABLE + "\" ADD CONSTRAINT broken_status CHECK (status <> 'failed') NOT VALID");
+            lease.close();
+            assertEquals("running", status());
+
+            try (ImportCoordinator.Lease reclaimed = coordinator("b").tryClaim(feed, jobKey)) {
+                assertNotNull(reclaimed);
+            }
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE \"" + LEASE_TABLE + "\" DROP CONSTRAINT IF EXISTS broken_status");
+        }
+    }
+
+    private HikariDataSource pool() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl(URL);
+        pool.setUsername(USER);
+        pool.setPassword(PASSWORD);
+        pool.setMaximumPoolSize(2);
+        return pool;
+    }
+
+    private ImportCoordinator coordinator(String owner) {
+        return coordinator(dataSource, owner);
+    }
+
+    private ImportCoordinator coordinator(DataSource dataSource, String owner) {
+        ImportProperties properties = new ImportProperties();
+        properties.getCoordination().setEnabled(true);
+        properties.getCoordination().setLeaseTable(LEASE_TABLE);
+        properties.getCoordination().setOwner(owner);
+        return new ImportCoordinator(dataSource, new JdbcTemplate(dataSource), properties);
+    }
+
+    private String status() {
+        return jdbcTemplate.queryForObject("SELECT status FROM \"" + LEASE_TABLE + "\" WHERE feed = ? AND job_key = ?",
+                String.class, feed, jobKey);
+    }
+
+    private String owner() {
+        return jdbcTemplate.queryForObject("SELECT owner FROM \"" + LEASE_TABLE + "\" WHERE feed = ? AND job_key = ?",
+                String.class, feed, jobKey);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.myxmlparser.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionNamesTests {
+
+    @Test
+    void listPartitionKeepsReadableSuffix() {
+        String name = PartitionNames.listPartition("offers", "Acme Corp.");
+
+        assertTrue(name.startsWith("offers_acme_corp_"), name);
+        assertEquals(name, PartitionNames.listPartition("offers", "Acme Corp."));
+    }
+
+    @Test
+    void listPartitionSeparatesValuesWithSameSuffix() {
+        String spaced = PartitionNames.listPartition("offers", "acme corp");
+        String dashed = PartitionNames.listPartition("offers", "Acme-Corp");
+
+        assertTrue(spaced.startsWith("offers_acme_corp_"), spaced);
+        assertTrue(dashed.startsWith("offers_acme_corp_"), dashed);
+        assertNotEquals(spaced, dashed);
+    }
+
+    @Test
+    void listPartitionFitsPostgresIdentifier() {
+        String longValue = "vendor".repeat(30);
+        String name = PartitionNames.listPartition("offers", longValue);
+
+        assertTrue(name.length() <= 63, name);
+        assertTrue(name.endsWith("_" + Integer.toHexString(longValue.hashCode())), name);
+    }
+
+    @Test
+    void listPartitionHandlesNonLatinValues() {
+        String name = PartitionNames.listPartition("offers", "Рога и копыта");
+
+        assertTrue(name.matches("offers_[a-z0-9_]*_[0-9a-f]+"), name);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.metrics.IngestionMetrics;
+import groovy.xml.slurpersupport.GPathResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки стадий разбора: чтение + parseXML, извлечение строк и определение типов.
+ * Каждая операция — полный проход по фиду из {@code offers} предложений.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class XmlParserServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int offers;
+
+    private IngestionMetrics metrics;
+    private Path feed;
+    private XmlParserService parser;
+    private List<String> values;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        metrics = new IngestionMetrics(new SimpleMeterRegistry());
+        feed = BenchmarkFeeds.write(offers);
+
+        parser = new XmlParserService(metrics, new ImportProperties());
+        parser.parseXML(parser.readFromFile(feed));
+
+        values = new ArrayList<>();
+        for (Map<String, Object> row : parser.getTableRows("offers")) {
+            for (Object v : row.values()) {
+                if (v != null) {
+                    values.add(v.toString());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void readAndParse(Blackhole bh) {
+        XmlParserService service = new XmlParserService(metrics, new ImportProperties());
+        GPathResult document = service.readFromFile(feed);
+        service.parseXML(document);
+        bh.consume(service.getTableNames());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> tableRows() {
+        return parser.getTableRows("offers");
+    }
+
+    @Benchmark
+    public void detect(Blackhole bh) {
+        for (String v : values) {
+            bh.consume(parser.detect(v));
+        }
+    }
+}
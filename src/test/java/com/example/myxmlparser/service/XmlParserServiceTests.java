@@ -0,0 +1,252 @@
+package com.example.myxmlparser.service;
+
+import com.example.myxmlparser.config.ImportProperties;
+import com.example.myxmlparser.metrics.IngestionMetrics;
+import com.example.myxmlparser.utility.FeedShape;
+import com.example.myxmlparser.utility.YmlFeedGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XmlParserServiceTests {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parallelParseMatchesSequential() throws IOException {
+        Path feed = dir.resolve("feed.xml");
+        YmlFeedGenerator.generate(FeedShape.builder().offers(3_000).maxParams(12).seed(7).build(), feed);
+
+        int expectedChunks = chunkCount(feed);
+        assertTrue(expectedChunks > 1, "фид должен делиться на несколько частей: " + expectedChunks);
+
+        XmlParserService parallel = parallelParser();
+        parallel.parseXML(parallel.readFromFile(feed));
+
+        // без этой проверки тест прошёл бы и на откате к последовательному чтению
+        assertEquals(expectedChunks, parallel.lastChunkCount());
+        assertSameAsSequential(feed, parallel);
+    }
+
+    @Test
+    void presplitRowsAreCopiedOnEachCall() throws IOException {
+        Path feed = dir.resolve("feed.xml");
+        YmlFeedGenerator.generate(FeedShape.builder().offers(3_000).seed(7).build(), feed);
+
+        XmlParserService parallel = parallelParser();
+        parallel.parseXML(parallel.readFromFile(feed));
+        assertTrue(parallel.lastChunkCount() > 1);
+
+        Map<String, Object> first = parallel.getTableRows("offers").getFirst();
+        Object id = first.get("id");
+        first.put("id", "changed");
+
+        assertEquals(id, parallel.getTableRows("offers").getFirst().get("id"));
+    }
+
+    @Test
+    void boundaryInsideCdataFallsBackToSequential() throws IOException {
+        assertFallsBack("<description><![CDATA[%s<offer id=\"fake\">]]></description>");
+    }
+
+    @Test
+    void boundaryInsideCommentFallsBackToSequential() throws IOException {
+        assertFallsBack("<!-- %s<offer id=\"fake\"> --><description>plain</description>");
+    }
+
+    /**
+     * В каждом offer блок вдвое длиннее части, в конце которого стоит ложный тег offer:
+     * граница первой же части попадает внутрь CDATA или комментария, и части не разбираются.
+     */
+    private void assertFallsBack(String offerBody) throws IOException {
+        StringBuilder xml = new StringBuilder("<yml_catalog><shop><offers>\n");
+        String padding = "x".repeat(2 * CHUNK_SIZE);
+        for (int i = 1; i <= 20; i++) {
+            xml.append("<offer id=\"").append(i).append("\"><name>offer ").append(i).append("</name>")
+                    .append(offerBody.formatted(padding))
+                    .append("</offer>\n");
+        }
+        xml.append("</offers></shop></yml_catalog>\n");
+        Path feed = Files.writeString(dir.resolve("tricky.xml"), xml);
+
+        assertTrue(chunkCount(feed) > 1);
+
+        XmlParserService parallel = parallelParser();
+        parallel.parseXML(parallel.readFromFile(feed));
+
+        assertEquals(0, parallel.lastChunkCount());
+        assertEquals(20, parallel.getTableRows("offers").size());
+        assertSameAsSequential(feed, parallel);
+    }
+
+    private void assertSameAsSequential(Path feed, XmlParserService parallel) {
+        XmlParserService sequential = parser(new ImportProperties());
+        sequential.parseXML(sequential.readFromFile(feed));
+
+        assertFalse(sequential.getTableNames().isEmpty());
+        assertEquals(sequential.getTableNames(), parallel.getTableNames());
+        assertEquals(sequential.getFeedFingerprint(), parallel.getFeedFingerprint());
+
+        for (String tableName : sequential.getTableNames()) {
+            assertEquals(sequential.getTableDefinition(tableName).getColumns(), parallel.getTableDefinition(tableName).getColumns(), tableName);
+            assertEquals(sequential.getTableRows(tableName), parallel.getTableRows(tableName), tableName);
+        }
+    }
+
+    @Test
+    void columnNamesAreLowerCasedInSchemaAndRows() throws IOException {
+        Path feed = Files.writeString(dir.resolve("mixed-case.xml"), """
+                <yml_catalog>
+                  <shop>
+                    <offers>
+                      <offer id="1" Available="true">
+                        <currencyId>RUR</currencyId>
+                        <categoryId>7</categoryId>
+                        <delivery-options><option cost="300"/></delivery-options>
+                      </offer>
+                    </offers>
+                    <Tags>
+                      <Tag>red</Tag>
+                    </Tags>
+                  </shop>
+                </yml_catalog>
+                """);
+
+        XmlParserService parser = parser(new ImportProperties());
+        parser.parseXML(parser.readFromFile(feed));
+
+        for (String tableName : parser.getTableNames()) {
+            Set<String> columns = parser.getTableDefinition(tableName).getColumns().stream()
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+            for (String column : columns) {
+                assertEquals(column.toLowerCase(), column, tableName);
+            }
+            // ключ строки, которого нет среди колонок, отфильтровался бы при записи
+            for (Map<String, Object> row : parser.getTableRows(tableName)) {
+                assertTrue(columns.containsAll(row.keySet()), tableName + ": " + row.keySet() + " vs " + columns);
+            }
+        }
+
+        Map<String, Object> offer = parser.getTableRows("offers").getFirst();
+        assertEquals("RUR", offer.get("currencyid"));
+        assertEquals("7", offer.get("categoryid"));
+        assertEquals("true", offer.get("available"));
+        assertEquals("red", parser.getTableRows("Tags").getFirst().get("tag"));
+
+        String ddl = parser.getTableDDL("offers");
+        assertTrue(ddl.contains("\"currencyid\" "), ddl);
+        assertTrue(ddl.contains("\"delivery-options\" "), ddl);
+    }
+
+    @Test
+    void hashPartitionedTableDDL() throws IOException {
+        ImportProperties properties = new ImportProperties();
+        ImportProperties.Partitioning partitioning = new ImportProperties.Partitioning();
+        partitioning.setStrategy(ImportProperties.Partitioning.Strategy.HASH);
+        partitioning.setPartitions(4);
+        properties.getPartitioning().put("offers", partitioning);
+
+        String ddl = offersDDL(properties);
+
+        assertTrue(Pattern.compile("\"id\" \\w+ NOT NULL").matcher(ddl).find(), ddl);
+        assertTrue(ddl.contains("PRIMARY KEY (id)"), ddl);
+        assertTrue(ddl.contains("PARTITION BY HASH (\"id\")"), ddl);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ddl.contains("CREATE TABLE IF NOT EXISTS \"offers_p" + i + "\" PARTITION OF \"offers\""
+                    + " FOR VALUES WITH (MODULUS 4, REMAINDER " + i + ")"), ddl);
+        }
+        assertFalse(ddl.contains("offers_p4"), ddl);
+        assertFalse(ddl.contains("DEFAULT;"), ddl);
+    }
+
+    @Test
+    void listPartitionedTableDDL() throws IOException {
+        ImportProperties properties = new ImportProperties();
+        ImportProperties.Partitioning partitioning = new ImportProperties.Partitioning();
+        partitioning.setStrategy(ImportProperties.Partitioning.Strategy.LIST);
+        partitioning.setColumn("vendor");
+        properties.getPartitioning().put("offers", partitioning);
+
+        String ddl = offersDDL(properties);
+
+        assertTrue(ddl.contains("\"vendor\" varchar NOT NULL"), ddl);
+        assertTrue(ddl.contains("PRIMARY KEY (id, \"vendor\")"), ddl);
+        assertTrue(ddl.contains("PARTITION BY LIST (\"vendor\")"), ddl);
+        assertTrue(ddl.contains("CREATE TABLE IF NOT EXISTS \"offers_default\" PARTITION OF \"offers\" DEFAULT;"), ddl);
+        assertFalse(ddl.contains("MODULUS"), ddl);
+    }
+
+    @Test
+    void partitionedTableDDLRequiresKnownColumn() throws IOException {
+        ImportProperties properties = new ImportProperties();
+        ImportProperties.Partitioning partitioning = new ImportProperties.Partitioning();
+        partitioning.setStrategy(ImportProperties.Partitioning.Strategy.LIST);
+        partitioning.setColumn("missing");
+        properties.getPartitioning().put("offers", partitioning);
+
+        assertThrows(IllegalArgumentException.class, () -> offersDDL(properties));
+    }
+
+    private int chunkCount(Path feed) throws IOException {
+        ImportProperties.ParallelParse parallel = parallelProperties().getParallelParse();
+        try (FileChannel channel = FileChannel.open(feed, StandardOpenOption.READ);
+             Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return FeedChunks.locate(segment, parallel.getTable(), parallel.getRowElement(), parallel.getChunkSize()).chunks().size();
+        }
+    }
+
+    private String offersDDL(ImportProperties properties) throws IOException {
+        Path feed = Files.writeString(dir.resolve("offers.xml"), """
+                <yml_catalog>
+                  <shop>
+                    <offers>
+                      <offer id="1"><vendor>Acme</vendor><name>Kettle</name></offer>
+                      <offer id="2"><vendor>Globex</vendor><name>Toaster</name></offer>
+                    </offers>
+                  </shop>
+                </yml_catalog>
+                """);
+
+        XmlParserService parser = parser(properties);
+        parser.parseXML(parser.readFromFile(feed));
+        return parser.getTableDDL("offers");
+    }
+
+    private ImportProperties parallelProperties() {
+        ImportProperties properties = new ImportProperties();
+        properties.getParallelParse().setEnabled(true);
+        properties.getParallelParse().setChunkSize(CHUNK_SIZE);
+        properties.getParallelParse().setThreads(4);
+        return properties;
+    }
+
+    private XmlParserService parallelParser() {
+        return parser(parallelProperties());
+    }
+
+    private XmlParserService parser(ImportProperties properties) {
+        return new XmlParserService(new IngestionMetrics(new SimpleMeterRegistry()), properties);
+    }
+}